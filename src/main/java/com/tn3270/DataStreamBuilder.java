@@ -1,87 +1,185 @@
 package com.tn3270;
 
-import java.io.ByteArrayOutputStream;
-import java.util.List;
+import java.nio.ByteBuffer;
 
 public class DataStreamBuilder {
+    private static final byte ORDER_SBA = (byte) 0x11;
+    private static final byte ORDER_SF = (byte) 0x1D;
+    private static final byte ORDER_SFE = (byte) 0x29;
+    private static final byte ATTRIBUTE_FIELD = (byte) 0xC0;
+    private static final byte ATTRIBUTE_HIGHLIGHT = (byte) 0x41;
+    private static final byte ATTRIBUTE_COLOR = (byte) 0x42;
+    private static final byte UNKNOWN_CHARACTER = (byte) 0x3F;
+    private static final byte[] ADDRESS_CODES = {
+        (byte)0x40, (byte)0xC1, (byte)0xC2, (byte)0xC3, (byte)0xC4, (byte)0xC5, (byte)0xC6, (byte)0xC7, (byte)0xC8, (byte)0xC9, (byte)0x4A, (byte)0x4B, (byte)0x4C, (byte)0x4D, (byte)0x4E, (byte)0x4F,
+        (byte)0x50, (byte)0xD1, (byte)0xD2, (byte)0xD3, (byte)0xD4, (byte)0xD5, (byte)0xD6, (byte)0xD7, (byte)0xD8, (byte)0xD9, (byte)0x5A, (byte)0x5B, (byte)0x5C, (byte)0x5D, (byte)0x5E, (byte)0x5F,
+        (byte)0x60, (byte)0x61, (byte)0xE2, (byte)0xE3, (byte)0xE4, (byte)0xE5, (byte)0xE6, (byte)0xE7, (byte)0xE8, (byte)0xE9, (byte)0x6A, (byte)0x6B, (byte)0x6C, (byte)0x6D, (byte)0x6E, (byte)0x6F,
+        (byte)0xF0, (byte)0xF1, (byte)0xF2, (byte)0xF3, (byte)0xF4, (byte)0xF5, (byte)0xF6, (byte)0xF7, (byte)0xF8, (byte)0xF9, (byte)0x7A, (byte)0x7B, (byte)0x7C, (byte)0x7D, (byte)0x7E, (byte)0x7F
+    };
+    private static final short[] ADDRESS_TABLE = new short[4096];
+    
+    static {
+        for (int address = 0; address < ADDRESS_TABLE.length; address++) {
+            int high = ADDRESS_CODES[(address >> 6) & 0x3F] & 0xFF;
+            int low = ADDRESS_CODES[address & 0x3F] & 0xFF;
+            ADDRESS_TABLE[address] = (short) ((high << 8) | low);
+        }
+    }
+    
     private final Screen screen;
+    private ByteBuffer output = ByteBuffer.allocate(4096);
     
     public DataStreamBuilder(Screen screen) {
         this.screen = screen;
     }
     
     public byte[] buildAIDData(AIDKey aid) {
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        screen.getLock().lock();
+        try {
+            ByteBuffer record = buildAIDRecord(aid);
+            byte[] data = new byte[record.remaining()];
+            record.get(data);
+            return data;
+        } finally {
+            screen.getLock().unlock();
+        }
+    }
+    
+    ByteBuffer buildAIDRecord(AIDKey aid) {
+        return buildReadModified(aid, false);
+    }
+    
+    ByteBuffer buildReadModified(AIDKey aid, boolean all) {
+        output.clear();
+        
+        put(aid.getCode());
+        if (!all && isShortRead(aid)) {
+            output.flip();
+            return output;
+        }
+        
+        putAddress(screen.getCursorPosition());
         
-        output.write(aid.getCode());
+        FieldIndex fields = screen.fields();
+        char[] buffer = screen.getBufferArray();
+        int bufferSize = screen.getBufferSize();
         
-        int cursorAddress = screen.getCursorPosition();
-        for (byte b : encodeAddress(cursorAddress)) {
-            output.write(b);
+        for (int id = fields.nextModified(0); id >= 0; id = fields.nextModified(id + 1)) {
+            Field field = fields.get(id);
+            putField(buffer, field.getStart(), field.getStart() + field.getLength(), bufferSize);
         }
         
-        if (aid != AIDKey.CLEAR && aid != AIDKey.PA1 && aid != AIDKey.PA2 && aid != AIDKey.PA3) {
-            List<Field> fields = screen.getFields();
-            
-            for (Field field : fields) {
-                if (field != null && field.isModified() && !field.isProtected()) {
-                    output.write((byte) 0x11);
-                    for (byte b : encodeAddress(field.getStart())) {
-                        output.write(b);
-                    }
-                    
-                    String fieldData = screen.getString(field.getStart(), field.getLength()).trim();
-                    byte[] ebcdicData = asciiToEbcdic(fieldData);
-                    output.write(ebcdicData, 0, ebcdicData.length);
+        output.flip();
+        return output;
+    }
+    
+    ByteBuffer buildReadBuffer(AIDKey aid) {
+        output.clear();
+        
+        put(aid.getCode());
+        putAddress(screen.getCursorPosition());
+        
+        FieldIndex fields = screen.fields();
+        char[] buffer = screen.getBufferArray();
+        boolean[] marks = screen.getFieldAttributeMarks();
+        byte[] attributes = screen.getAttributeArray();
+        byte[] highlights = screen.getHighlightArray();
+        byte[] colors = screen.getColorArray();
+        int bufferSize = screen.getBufferSize();
+        
+        ensureCapacity(bufferSize);
+        for (int i = 0; i < bufferSize; ) {
+            if (marks[i]) {
+                byte attribute = ADDRESS_CODES[fieldAttribute(fields, attributes[i], i, bufferSize) & 0x3F];
+                if (highlights[i] == 0 && colors[i] == 0) {
+                    ensureCapacity(2 + bufferSize - i);
+                    output.put(ORDER_SF);
+                    output.put(attribute);
+                } else {
+                    ensureCapacity(7 + bufferSize - i);
+                    output.put(ORDER_SFE);
+                    output.put((byte) 3);
+                    output.put(ATTRIBUTE_FIELD);
+                    output.put(attribute);
+                    output.put(ATTRIBUTE_HIGHLIGHT);
+                    output.put(highlights[i]);
+                    output.put(ATTRIBUTE_COLOR);
+                    output.put(colors[i]);
                 }
+                i++;
+                continue;
+            }
+            
+            byte[] array = output.array();
+            int position = output.position();
+            for (; i < bufferSize && !marks[i]; i++) {
+                char ch = buffer[i];
+                array[position++] = ch < 256 ? ASCII_TO_EBCDIC[ch] : UNKNOWN_CHARACTER;
             }
+            output.position(position);
         }
         
-        return output.toByteArray();
+        output.flip();
+        return output;
     }
     
-    private byte[] encodeAddress(int address) {
-        byte[] result = new byte[2];
-        
-        if (address < 4096) {
-            result[0] = (byte) ((address >> 6) & 0x3F);
-            result[1] = (byte) (address & 0x3F);
-            
-            result[0] = translateSixBitToEbcdic(result[0]);
-            result[1] = translateSixBitToEbcdic(result[1]);
-        } else {
-            result[0] = (byte) ((address >> 8) & 0x3F);
-            result[1] = (byte) (address & 0xFF);
+    private static byte fieldAttribute(FieldIndex fields, byte attribute, int position, int bufferSize) {
+        int start = position + 1 == bufferSize ? 0 : position + 1;
+        int id = fields.idAt(start);
+        if (id < 0 || fields.get(id).getStart() != start) {
+            return attribute;
+        }
+        return fields.isModified(id) ? (byte) (attribute | Field.MDT) : (byte) (attribute & ~Field.MDT);
+    }
+    
+    private void putField(char[] buffer, int start, int end, int bufferSize) {
+        while (end > start && (buffer[(end - 1) % bufferSize] == ' ' || buffer[(end - 1) % bufferSize] == 0)) {
+            end--;
         }
         
-        return result;
+        ensureCapacity(3 + end - start);
+        output.put(ORDER_SBA);
+        putAddress(start);
+        
+        byte[] array = output.array();
+        int position = output.position();
+        for (int i = start; i < end; i++) {
+            char ch = buffer[i < bufferSize ? i : i - bufferSize];
+            if (ch != 0) {
+                array[position++] = ch < 256 ? ASCII_TO_EBCDIC[ch] : UNKNOWN_CHARACTER;
+            }
+        }
+        output.position(position);
     }
     
-    private byte translateSixBitToEbcdic(byte sixBit) {
-        if (sixBit == 0x00) return 0x40;
-        if (sixBit >= 0x01 && sixBit <= 0x09) return (byte) (0xC0 + sixBit);
-        if (sixBit >= 0x0A && sixBit <= 0x12) return (byte) (0xC9 + sixBit - 0x09);
-        if (sixBit >= 0x13 && sixBit <= 0x1B) return (byte) (0xD1 + sixBit - 0x12);
-        if (sixBit >= 0x1C && sixBit <= 0x24) return (byte) (0xD9 + sixBit - 0x1B);
-        if (sixBit >= 0x25 && sixBit <= 0x2D) return (byte) (0xE1 + sixBit - 0x24);
-        if (sixBit >= 0x2E && sixBit <= 0x36) return (byte) (0xE9 + sixBit - 0x2D);
-        if (sixBit >= 0x37 && sixBit <= 0x3F) return (byte) (0xF0 + sixBit - 0x36);
-        return 0x40;
+    private void put(byte b) {
+        ensureCapacity(1);
+        output.put(b);
     }
     
-    private byte[] asciiToEbcdic(String text) {
-        byte[] result = new byte[text.length()];
-        for (int i = 0; i < text.length(); i++) {
-            result[i] = asciiToEbcdic(text.charAt(i));
+    private void putAddress(int address) {
+        ensureCapacity(2);
+        if (address < ADDRESS_TABLE.length) {
+            short code = ADDRESS_TABLE[address];
+            output.put((byte) (code >> 8));
+            output.put((byte) code);
+        } else {
+            output.put((byte) ((address >> 8) & 0x3F));
+            output.put((byte) (address & 0xFF));
         }
-        return result;
     }
     
-    private byte asciiToEbcdic(char ch) {
-        if (ch < 256) {
-            return ASCII_TO_EBCDIC[ch];
+    private void ensureCapacity(int extra) {
+        if (output.remaining() < extra) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(output.capacity() * 2, output.position() + extra));
+            output.flip();
+            larger.put(output);
+            output = larger;
         }
-        return 0x3F;
+    }
+    
+    private static boolean isShortRead(AIDKey aid) {
+        return aid == AIDKey.CLEAR || aid == AIDKey.PA1 || aid == AIDKey.PA2 || aid == AIDKey.PA3;
     }
     
     private static final byte[] ASCII_TO_EBCDIC = {
@@ -1,5 +1,6 @@
 package com.tn3270;
 
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class DataStreamProcessor {
@@ -24,17 +25,32 @@ public class DataStreamProcessor {
     private static final byte ORDER_MF = (byte) 0x2C;
     private static final byte ORDER_SA = (byte) 0x28;
     
+    private static final byte ATTRIBUTE_FIELD = (byte) 0xC0;
+    private static final byte ATTRIBUTE_HIGHLIGHT = (byte) 0x41;
+    private static final byte ATTRIBUTE_COLOR = (byte) 0x42;
+    
     private static final byte WCC_KEYBOARD_RESTORE = (byte) 0x40;
     private static final byte WCC_MDT_RESET = (byte) 0x02;
     private static final byte WCC_SOUND_ALARM = (byte) 0x04;
     
+    private static final boolean[] ORDER_TABLE = new boolean[256];
+    
+    static {
+        for (byte order : new byte[]{ORDER_SF, ORDER_SFE, ORDER_SBA, ORDER_IC, ORDER_PT,
+                ORDER_RA, ORDER_EUA, ORDER_GE, ORDER_MF, ORDER_SA}) {
+            ORDER_TABLE[order & 0xFF] = true;
+        }
+    }
+    
     private final Screen screen;
+    private final DataStreamBuilder builder;
     private byte[] data;
     private int position;
     private int currentBufferPosition;
     
     public DataStreamProcessor(Screen screen) {
         this.screen = screen;
+        this.builder = new DataStreamBuilder(screen);
         this.currentBufferPosition = 0;
     }
     
@@ -51,7 +67,9 @@ public class DataStreamProcessor {
     }
     
     private void processCommand(byte command) {
-        logger.fine(String.format("Processing command: 0x%02X", command));
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(String.format("Processing command: 0x%02X", command));
+        }
         
         switch (command) {
             case CMD_WRITE:
@@ -59,7 +77,12 @@ public class DataStreamProcessor {
                 break;
                 
             case CMD_ERASE_WRITE:
+                screen.setAlternateSize(false);
+                processWrite(true);
+                break;
+                
             case CMD_ERASE_WRITE_ALTERNATE:
+                screen.setAlternateSize(true);
                 processWrite(true);
                 break;
                 
@@ -68,8 +91,15 @@ public class DataStreamProcessor {
                 break;
                 
             case CMD_READ_BUFFER:
+                screen.sendResponse(builder.buildReadBuffer(screen.getAid()));
+                break;
+                
             case CMD_READ_MODIFIED:
+                screen.sendResponse(builder.buildReadModified(screen.getAid(), false));
+                break;
+                
             case CMD_READ_MODIFIED_ALL:
+                screen.sendResponse(builder.buildReadModified(screen.getAid(), true));
                 break;
                 
             default:
@@ -80,26 +110,29 @@ public class DataStreamProcessor {
     
     private void processWrite(boolean eraseFirst) {
         if (eraseFirst) {
-            for (int i = 0; i < screen.getBufferSize(); i++) {
-                screen.setBuffer(i, ' ');
-                screen.setAttribute(i, (byte) 0);
-                screen.setField(i, null);
-            }
+            screen.eraseAll();
+            screen.setCursorPositionInternal(0);
+            currentBufferPosition = 0;
+        } else {
+            currentBufferPosition = screen.getCursorPosition();
         }
         
         byte wcc = readByte();
         processWCC(wcc);
         
+        byte[] data = this.data;
         while (position < data.length) {
-            byte order = peekByte();
+            byte order = data[position];
             
-            if (isOrder(order)) {
-                readByte();
+            if (ORDER_TABLE[order & 0xFF]) {
+                position++;
                 processOrder(order);
             } else {
                 processText();
             }
         }
+        
+        screen.fields();
     }
     
     private void processWCC(byte wcc) {
@@ -110,11 +143,7 @@ public class DataStreamProcessor {
         }
         
         if ((wcc & WCC_MDT_RESET) != 0) {
-            for (Field field : screen.getFields()) {
-                if (field != null) {
-                    field.setModified(false);
-                }
-            }
+            resetModifiedFlags();
         }
         
         if ((wcc & WCC_SOUND_ALARM) != 0) {
@@ -173,56 +202,30 @@ public class DataStreamProcessor {
     private void processStartField() {
         byte attribute = readByte();
         
-        int nextPosition = currentBufferPosition;
-        int fieldStart = (nextPosition + 1) % screen.getBufferSize();
-        
-        int fieldEnd = fieldStart;
-        for (int i = fieldStart; i < screen.getBufferSize(); i++) {
-            if (screen.getAttribute(i) != 0) {
-                fieldEnd = i;
-                break;
-            }
-        }
-        
-        if (fieldEnd == fieldStart) {
-            fieldEnd = screen.getBufferSize();
-        }
-        
-        int fieldLength = fieldEnd - fieldStart;
-        Field field = new Field(fieldStart, fieldLength, attribute);
-        
-        for (int i = fieldStart; i < fieldEnd; i++) {
-            screen.setField(i, field);
-        }
-        
-        screen.setAttribute(nextPosition, attribute);
+        screen.setFieldAttribute(currentBufferPosition, attribute);
         currentBufferPosition = (currentBufferPosition + 1) % screen.getBufferSize();
     }
     
     private void processStartFieldExtended() {
         int count = readByte() & 0xFF;
         byte attribute = 0;
+        byte highlight = 0;
+        byte color = 0;
         
         for (int i = 0; i < count; i++) {
             byte type = readByte();
             byte value = readByte();
             
-            if (type == (byte) 0xC0) {
+            if (type == ATTRIBUTE_FIELD) {
                 attribute = value;
+            } else if (type == ATTRIBUTE_HIGHLIGHT) {
+                highlight = value;
+            } else if (type == ATTRIBUTE_COLOR) {
+                color = value;
             }
         }
         
-        int nextPosition = currentBufferPosition;
-        int fieldStart = (nextPosition + 1) % screen.getBufferSize();
-        
-        int fieldEnd = screen.getBufferSize();
-        Field field = new Field(fieldStart, fieldEnd - fieldStart, attribute);
-        
-        for (int i = fieldStart; i < fieldEnd; i++) {
-            screen.setField(i, field);
-        }
-        
-        screen.setAttribute(nextPosition, attribute);
+        screen.setFieldAttribute(currentBufferPosition, attribute, highlight, color);
         currentBufferPosition = (currentBufferPosition + 1) % screen.getBufferSize();
     }
     
@@ -236,21 +239,7 @@ public class DataStreamProcessor {
     }
     
     private void processProgramTab() {
-        Field nextField = null;
-        int start = currentBufferPosition;
-        
-        for (int i = (start + 1) % screen.getBufferSize(); i != start; i = (i + 1) % screen.getBufferSize()) {
-            final int position = i;
-            Field field = screen.getFields().stream()
-                    .filter(f -> f != null && f.getStart() == position && !f.isProtected())
-                    .findFirst()
-                    .orElse(null);
-            
-            if (field != null) {
-                nextField = field;
-                break;
-            }
-        }
+        Field nextField = screen.fields().nextUnprotected(currentBufferPosition);
         
         if (nextField != null) {
             currentBufferPosition = nextField.getStart();
@@ -259,7 +248,7 @@ public class DataStreamProcessor {
     
     private void processRepeatToAddress() {
         int stopAddress = readAddress();
-        char ch = (char) readByte();
+        char ch = ebcdicToAscii(readByte());
         
         while (currentBufferPosition != stopAddress) {
             screen.setBuffer(currentBufferPosition, ch);
@@ -269,33 +258,39 @@ public class DataStreamProcessor {
     
     private void processEraseUnprotected() {
         int stopAddress = readAddress();
+        FieldIndex fields = screen.fields();
+        char[] buffer = screen.getBufferArray();
+        int bufferSize = screen.getBufferSize();
         
         while (currentBufferPosition != stopAddress) {
-            Field field = screen.getFields().stream()
-                    .filter(f -> f != null && f.contains(currentBufferPosition))
-                    .findFirst()
-                    .orElse(null);
-            
-            if (field == null || !field.isProtected()) {
-                screen.setBuffer(currentBufferPosition, ' ');
+            if (!fields.isProtectedAt(currentBufferPosition)) {
+                buffer[currentBufferPosition] = ' ';
+                screen.markDirty(currentBufferPosition);
             }
             
-            currentBufferPosition = (currentBufferPosition + 1) % screen.getBufferSize();
+            currentBufferPosition = (currentBufferPosition + 1) % bufferSize;
         }
     }
     
     private void processEraseAllUnprotected() {
-        for (int i = 0; i < screen.getBufferSize(); i++) {
-            final int position = i;
-            Field field = screen.getFields().stream()
-                    .filter(f -> f != null && f.contains(position))
-                    .findFirst()
-                    .orElse(null);
-            
-            if (field == null || !field.isProtected()) {
-                screen.setBuffer(i, ' ');
+        FieldIndex fields = screen.fields();
+        
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            if (!field.isProtected()) {
+                screen.eraseRange(field.getStart(), field.getStart() + field.getLength());
             }
         }
+        
+        resetModifiedFlags();
+        
+        Field first = fields.firstUnprotected();
+        screen.setCursorPositionInternal(first != null ? first.getStart() : 0);
+        screen.setKeyboardLocked(false);
+    }
+    
+    private void resetModifiedFlags() {
+        screen.fields().resetModified();
     }
     
     private void processGraphicEscape() {
@@ -319,30 +314,43 @@ public class DataStreamProcessor {
     }
     
     private void processText() {
-        while (position < data.length && !isOrder(peekByte())) {
-            byte b = readByte();
-            char ch = ebcdicToAscii(b);
-            screen.setBuffer(currentBufferPosition, ch);
-            currentBufferPosition = (currentBufferPosition + 1) % screen.getBufferSize();
+        byte[] data = this.data;
+        int start = position;
+        int end = start;
+        while (end < data.length && !ORDER_TABLE[data[end] & 0xFF]) {
+            end++;
         }
-    }
-    
-    private boolean isOrder(byte b) {
-        return b == ORDER_SF || b == ORDER_SFE || b == ORDER_SBA || 
-               b == ORDER_IC || b == ORDER_PT || b == ORDER_RA || 
-               b == ORDER_EUA || b == ORDER_GE || b == ORDER_MF || 
-               b == ORDER_SA;
+        position = end;
+        
+        char[] buffer = screen.getBufferArray();
+        int bufferSize = screen.getBufferSize();
+        int address = currentBufferPosition;
+        
+        for (int i = start; i < end; ) {
+            int run = Math.min(end - i, bufferSize - address);
+            screen.markDirty(address, address + run);
+            for (int limit = i + run; i < limit; i++) {
+                buffer[address++] = EBCDIC_TO_ASCII[data[i] & 0xFF];
+            }
+            if (address == bufferSize) {
+                address = 0;
+            }
+        }
+        
+        currentBufferPosition = address;
     }
     
     private int readAddress() {
         byte b1 = readByte();
         byte b2 = readByte();
         
+        int address;
         if ((b1 & 0xC0) == 0) {
-            return ((b1 & 0x3F) << 8) | (b2 & 0xFF);
+            address = ((b1 & 0x3F) << 8) | (b2 & 0xFF);
         } else {
-            return ((b1 & 0x3F) << 6) | (b2 & 0x3F);
+            address = ((b1 & 0x3F) << 6) | (b2 & 0x3F);
         }
+        return address % screen.getBufferSize();
     }
     
     private byte readByte() {
@@ -352,13 +360,6 @@ public class DataStreamProcessor {
         return data[position++];
     }
     
-    private byte peekByte() {
-        if (position >= data.length) {
-            return 0;
-        }
-        return data[position];
-    }
-    
     private char ebcdicToAscii(byte b) {
         int index = b & 0xFF;
         return EBCDIC_TO_ASCII[index];
@@ -0,0 +1,154 @@
+package com.tn3270;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+class EventLoop implements Runnable {
+    private static final Logger logger = Logger.getLogger(EventLoop.class.getName());
+    
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final PriorityQueue<ScheduledTask> scheduledTasks = new PriorityQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    
+    EventLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+    
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (!inEventLoop()) {
+            selector.wakeup();
+        }
+    }
+    
+    ScheduledTask schedule(Runnable task, long delay, TimeUnit unit) {
+        ScheduledTask scheduled = new ScheduledTask(task, System.nanoTime() + unit.toNanos(delay));
+        execute(() -> scheduledTasks.add(scheduled));
+        return scheduled;
+    }
+    
+    boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+    
+    Selector selector() {
+        return selector;
+    }
+    
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+    
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                long timeout = nextTimeout();
+                if (timeout < 0) {
+                    selector.selectNow();
+                } else {
+                    selector.select(timeout);
+                }
+                runTasks();
+                runScheduledTasks();
+                
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    ((NioConnection) key.attachment()).handle(key);
+                }
+            } catch (IOException e) {
+                logger.warning("Event loop error: " + e.getMessage());
+            } catch (RuntimeException e) {
+                logger.severe("Unexpected event loop error: " + e);
+            }
+        }
+        
+        for (SelectionKey key : selector.keys()) {
+            ((NioConnection) key.attachment()).close();
+        }
+        runTasks();
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.fine("Error closing selector: " + e.getMessage());
+        }
+    }
+    
+    private long nextTimeout() {
+        if (!tasks.isEmpty()) {
+            return -1;
+        }
+        
+        ScheduledTask next = scheduledTasks.peek();
+        if (next == null) {
+            return 0;
+        }
+        
+        long remaining = next.deadline - System.nanoTime();
+        if (remaining <= 0) {
+            return -1;
+        }
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+    }
+    
+    private void runScheduledTasks() {
+        long now = System.nanoTime();
+        ScheduledTask next;
+        while ((next = scheduledTasks.peek()) != null && next.deadline - now <= 0) {
+            scheduledTasks.poll();
+            if (!next.cancelled) {
+                try {
+                    next.task.run();
+                } catch (RuntimeException e) {
+                    logger.severe("Scheduled event loop task failed: " + e);
+                }
+            }
+        }
+    }
+    
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.severe("Event loop task failed: " + e);
+            }
+        }
+    }
+    
+    static class ScheduledTask implements Comparable<ScheduledTask> {
+        private final Runnable task;
+        private final long deadline;
+        private volatile boolean cancelled;
+        
+        ScheduledTask(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+        
+        void cancel() {
+            cancelled = true;
+        }
+        
+        @Override
+        public int compareTo(ScheduledTask other) {
+            return Long.compare(deadline - other.deadline, 0);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,59 @@
+package com.tn3270;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class EventLoopGroup implements Closeable {
+    private static final Object sharedLock = new Object();
+    private static EventLoopGroup shared;
+    
+    private final EventLoop[] loops;
+    private final AtomicInteger next = new AtomicInteger();
+    
+    public EventLoopGroup() throws IOException {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+    
+    public EventLoopGroup(int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        
+        this.loops = new EventLoop[threads];
+        try {
+            for (int i = 0; i < threads; i++) {
+                loops[i] = new EventLoop("TN3270-EventLoop-" + i);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+    
+    public static EventLoopGroup shared() throws IOException {
+        synchronized (sharedLock) {
+            if (shared == null) {
+                shared = new EventLoopGroup();
+            }
+            return shared;
+        }
+    }
+    
+    public int getThreadCount() {
+        return loops.length;
+    }
+    
+    EventLoop next() {
+        return loops[(next.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+    }
+    
+    @Override
+    public void close() {
+        for (EventLoop loop : loops) {
+            if (loop != null) {
+                loop.shutdown();
+            }
+        }
+    }
+}
\ No newline at end of file
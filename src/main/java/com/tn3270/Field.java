@@ -1,16 +1,35 @@
 package com.tn3270;
 
 public class Field {
+    static final byte MDT = 0x01;
+    
     private final int start;
     private final int length;
     private final byte attribute;
+    private final int bufferSize;
+    private final boolean readOnly;
     private boolean modified;
     
     public Field(int start, int length, byte attribute) {
+        this(start, length, attribute, 0);
+    }
+    
+    Field(int start, int length, byte attribute, int bufferSize) {
         this.start = start;
         this.length = length;
         this.attribute = attribute;
-        this.modified = false;
+        this.bufferSize = bufferSize;
+        this.readOnly = false;
+        this.modified = (attribute & MDT) != 0;
+    }
+    
+    Field(int start, int length, byte attribute, int bufferSize, boolean modified) {
+        this.start = start;
+        this.length = length;
+        this.attribute = attribute;
+        this.bufferSize = bufferSize;
+        this.readOnly = true;
+        this.modified = modified;
     }
     
     public int getStart() {
@@ -18,7 +37,8 @@ public class Field {
     }
     
     public int getEnd() {
-        return start + length - 1;
+        int end = start + length - 1;
+        return wraps() ? end - bufferSize : end;
     }
     
     public int getLength() {
@@ -46,17 +66,36 @@ public class Field {
     }
     
     public boolean isModified() {
-        return modified || (attribute & 0x01) != 0;
+        return modified;
     }
     
     public void setModified(boolean modified) {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Fields of a screen snapshot are read-only");
+        }
         this.modified = modified;
     }
     
+    public boolean wraps() {
+        return bufferSize > 0 && start + length > bufferSize;
+    }
+    
     public boolean contains(int position) {
+        if (position < start && wraps()) {
+            position += bufferSize;
+        }
         return position >= start && position < start + length;
     }
     
+    int getBufferSize() {
+        return bufferSize;
+    }
+    
+    int offsetOf(int position) {
+        int offset = position - start;
+        return offset < 0 && wraps() ? offset + bufferSize : offset;
+    }
+    
     @Override
     public String toString() {
         return String.format("Field[start=%d, length=%d, protected=%b, numeric=%b, hidden=%b]",
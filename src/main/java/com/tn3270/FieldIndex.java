@@ -0,0 +1,241 @@
+package com.tn3270;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+class FieldIndex {
+    private static final int NO_FIELD = -1;
+    
+    private int bufferSize;
+    private int[] cellField;
+    private int[] starts = new int[16];
+    private Field[] fields = new Field[16];
+    private int count;
+    private int[] spareStarts = new int[16];
+    private Field[] spareFields = new Field[16];
+    private int[] unprotectedStarts = new int[16];
+    private int[] unprotectedIds = new int[16];
+    private int unprotectedCount;
+    private int generation;
+    private BitSet modified = new BitSet();
+    private BitSet spareModified = new BitSet();
+    
+    FieldIndex(int bufferSize) {
+        this.bufferSize = bufferSize;
+        this.cellField = new int[bufferSize];
+        Arrays.fill(cellField, NO_FIELD);
+    }
+    
+    void rebuild(boolean[] fieldAttributeMarks, byte[] attributes, BitSet rewritten, int bufferSize) {
+        if (cellField.length < bufferSize) {
+            cellField = new int[bufferSize];
+        }
+        this.bufferSize = bufferSize;
+        
+        int[] previousStarts = starts;
+        Field[] previousFields = fields;
+        int previousCount = count;
+        BitSet previousModified = modified;
+        
+        starts = spareStarts;
+        fields = spareFields;
+        modified = spareModified;
+        spareStarts = previousStarts;
+        spareFields = previousFields;
+        spareModified = previousModified;
+        modified.clear();
+        generation++;
+        count = 0;
+        unprotectedCount = 0;
+        Arrays.fill(cellField, 0, bufferSize, NO_FIELD);
+        
+        int first = nextMark(fieldAttributeMarks, 0);
+        if (first == NO_FIELD) {
+            return;
+        }
+        
+        int last = bufferSize - 1;
+        while (!fieldAttributeMarks[last]) {
+            last--;
+        }
+        
+        int wrapStart = last + 1 == bufferSize ? 0 : last + 1;
+        int wrapLength = bufferSize - 1 - last + first;
+        if (wrapStart == 0 && wrapLength > 0) {
+            addField(0, wrapLength, attributes[last], rewritten.get(last), previousStarts, previousFields,
+                    previousModified, previousCount);
+        }
+        
+        for (int fa = first; fa != last; ) {
+            int next = nextMark(fieldAttributeMarks, fa + 1);
+            if (fa + 1 < next) {
+                addField(fa + 1, next - fa - 1, attributes[fa], rewritten.get(fa), previousStarts, previousFields,
+                        previousModified, previousCount);
+            }
+            fa = next;
+        }
+        
+        if (wrapStart != 0 && wrapLength > 0) {
+            addField(wrapStart, wrapLength, attributes[last], rewritten.get(last), previousStarts, previousFields,
+                    previousModified, previousCount);
+        }
+    }
+    
+    void clear(int bufferSize) {
+        if (cellField.length < bufferSize) {
+            cellField = new int[bufferSize];
+        }
+        this.bufferSize = bufferSize;
+        modified.clear();
+        generation++;
+        count = 0;
+        unprotectedCount = 0;
+        Arrays.fill(cellField, 0, bufferSize, NO_FIELD);
+    }
+    
+    int generation() {
+        return generation;
+    }
+    
+    int size() {
+        return count;
+    }
+    
+    Field get(int id) {
+        return id >= 0 && id < count ? fields[id] : null;
+    }
+    
+    int idAt(int position) {
+        return cellField[position];
+    }
+    
+    Field fieldAt(int position) {
+        int id = cellField[position];
+        return id == NO_FIELD ? null : fields[id];
+    }
+    
+    boolean isProtectedAt(int position) {
+        int id = cellField[position];
+        return id != NO_FIELD && fields[id].isProtected();
+    }
+    
+    Field nextUnprotected(int position) {
+        if (unprotectedCount == 0) {
+            return null;
+        }
+        int index = upperBound(unprotectedStarts, unprotectedCount, position);
+        return fields[unprotectedIds[index == unprotectedCount ? 0 : index]];
+    }
+    
+    Field previousUnprotected(int position) {
+        if (unprotectedCount == 0) {
+            return null;
+        }
+        int index = upperBound(unprotectedStarts, unprotectedCount, position - 1) - 1;
+        return fields[unprotectedIds[index < 0 ? unprotectedCount - 1 : index]];
+    }
+    
+    boolean isModified(int id) {
+        return modified.get(id);
+    }
+    
+    void setModified(int id, boolean value) {
+        modified.set(id, value);
+        fields[id].setModified(value);
+    }
+    
+    int nextModified(int id) {
+        return id < count ? modified.nextSetBit(id) : -1;
+    }
+    
+    void resetModified() {
+        for (int id = modified.nextSetBit(0); id >= 0; id = modified.nextSetBit(id + 1)) {
+            fields[id].setModified(false);
+        }
+        modified.clear();
+    }
+    
+    Field firstUnprotected() {
+        return unprotectedCount == 0 ? null : fields[unprotectedIds[0]];
+    }
+    
+    List<Field> toList() {
+        List<Field> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(fields[i]);
+        }
+        return list;
+    }
+    
+    private void addField(int start, int length, byte attribute, boolean rewritten, int[] previousStarts,
+            Field[] previousFields, BitSet previousModified, int previousCount) {
+        Field field = null;
+        boolean fieldModified = (attribute & Field.MDT) != 0;
+        int previous = Arrays.binarySearch(previousStarts, 0, previousCount, start);
+        if (previous >= 0) {
+            Field candidate = previousFields[previous];
+            if (candidate.getLength() == length && candidate.getAttribute() == attribute
+                    && candidate.getBufferSize() == bufferSize) {
+                field = candidate;
+                if (!rewritten) {
+                    fieldModified = previousModified.get(previous);
+                }
+            }
+        }
+        if (field == null) {
+            field = new Field(start, length, attribute, bufferSize);
+        }
+        field.setModified(fieldModified);
+        
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            fields = Arrays.copyOf(fields, count * 2);
+        }
+        int id = count++;
+        starts[id] = start;
+        fields[id] = field;
+        if (start + length > bufferSize) {
+            Arrays.fill(cellField, start, bufferSize, id);
+            Arrays.fill(cellField, 0, start + length - bufferSize, id);
+        } else {
+            Arrays.fill(cellField, start, start + length, id);
+        }
+        if (fieldModified) {
+            modified.set(id);
+        }
+        
+        if (!field.isProtected()) {
+            if (unprotectedCount == unprotectedStarts.length) {
+                unprotectedStarts = Arrays.copyOf(unprotectedStarts, unprotectedCount * 2);
+                unprotectedIds = Arrays.copyOf(unprotectedIds, unprotectedCount * 2);
+            }
+            unprotectedStarts[unprotectedCount] = start;
+            unprotectedIds[unprotectedCount++] = id;
+        }
+    }
+    
+    private int nextMark(boolean[] marks, int from) {
+        for (int i = from; i < bufferSize; i++) {
+            if (marks[i]) {
+                return i;
+            }
+        }
+        return NO_FIELD;
+    }
+    
+    private static int upperBound(int[] values, int length, int key) {
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,95 @@
+package com.tn3270;
+
+import java.util.BitSet;
+
+class FingerprintTracker {
+    private static final long PRIME = 0x100000001B3L;
+    private static final byte LAYOUT_BITS = 0x30;
+    
+    private long[] rowHashes = new long[0];
+    private int generation = -1;
+    private long layoutHash;
+    private int rows;
+    private int cols;
+    
+    long update(FieldIndex fields, char[] buffer, int rows, int cols, BitSet changedRows) {
+        boolean full = rows != this.rows || cols != this.cols;
+        if (rowHashes.length < rows) {
+            rowHashes = new long[rows];
+            full = true;
+        }
+        if (full || fields.generation() != generation) {
+            long layout = hashLayout(fields, rows, cols);
+            full |= layout != layoutHash;
+            layoutHash = layout;
+            generation = fields.generation();
+        }
+        this.rows = rows;
+        this.cols = cols;
+        
+        if (full) {
+            for (int row = 0; row < rows; row++) {
+                rowHashes[row] = hashRow(fields, buffer, row);
+            }
+        } else {
+            for (int row = changedRows.nextSetBit(0); row >= 0 && row < rows; row = changedRows.nextSetBit(row + 1)) {
+                rowHashes[row] = hashRow(fields, buffer, row);
+            }
+        }
+        
+        long hash = layoutHash;
+        for (int row = 0; row < rows; row++) {
+            hash = (hash ^ rowHashes[row]) * PRIME;
+        }
+        return mix(hash);
+    }
+    
+    private long hashLayout(FieldIndex fields, int rows, int cols) {
+        long hash = (rows * 31L + cols) * PRIME;
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            hash = (hash ^ field.getStart()) * PRIME;
+            hash = (hash ^ field.getLength()) * PRIME;
+            hash = (hash ^ (field.getAttribute() & LAYOUT_BITS)) * PRIME;
+        }
+        return hash;
+    }
+    
+    private long hashRow(FieldIndex fields, char[] buffer, int row) {
+        long hash = row;
+        int position = row * cols;
+        int end = position + cols;
+        if (fields.size() == 0) {
+            for (; position < end; position++) {
+                hash = (hash ^ buffer[position]) * PRIME;
+            }
+            return hash;
+        }
+        
+        while (position < end) {
+            Field field = fields.fieldAt(position);
+            if (field == null || !field.isProtected()) {
+                int runEnd = field == null ? position + 1
+                        : Math.min(end, position + field.getLength() - field.offsetOf(position));
+                for (; position < runEnd; position++) {
+                    hash *= PRIME;
+                }
+            } else {
+                int runEnd = Math.min(end, position + field.getLength() - field.offsetOf(position));
+                for (; position < runEnd; position++) {
+                    hash = (hash ^ buffer[position]) * PRIME;
+                }
+            }
+        }
+        return hash;
+    }
+    
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
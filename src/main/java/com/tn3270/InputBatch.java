@@ -0,0 +1,187 @@
+package com.tn3270;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class InputBatch {
+    private static final int NONE = -1;
+    
+    private final Screen screen;
+    private final List<Write> writes = new ArrayList<>();
+    private int cursorRow = NONE;
+    private int cursorCol = NONE;
+    private int cursorPosition = NONE;
+    
+    InputBatch(Screen screen) {
+        this.screen = screen;
+    }
+    
+    public InputBatch field(int fieldNumber, String text) {
+        if (fieldNumber < 0) {
+            throw new IllegalArgumentException("Invalid field number: " + fieldNumber);
+        }
+        writes.add(new Write(fieldNumber, NONE, NONE, NONE, null, NONE, text));
+        return this;
+    }
+    
+    public InputBatch put(int position, String text) {
+        if (position < 0) {
+            throw new IllegalArgumentException("Invalid position: " + position);
+        }
+        writes.add(new Write(NONE, position, NONE, NONE, null, NONE, text));
+        return this;
+    }
+    
+    public InputBatch put(int row, int col, String text) {
+        if (row < 0 || col < 0) {
+            throw new IllegalArgumentException("Invalid row/col: " + row + "," + col);
+        }
+        writes.add(new Write(NONE, NONE, row, col, null, NONE, text));
+        return this;
+    }
+    
+    public InputBatch put(ScreenTemplate template, String name, String text) {
+        writes.add(new Write(NONE, NONE, NONE, NONE, template, template.indexOf(name), text));
+        return this;
+    }
+    
+    public InputBatch cursor(int position) {
+        this.cursorPosition = position;
+        this.cursorRow = NONE;
+        return this;
+    }
+    
+    public InputBatch cursor(int row, int col) {
+        this.cursorRow = row;
+        this.cursorCol = col;
+        this.cursorPosition = NONE;
+        return this;
+    }
+    
+    public int size() {
+        return writes.size();
+    }
+    
+    public Screen apply() {
+        return screen.execute(this, null);
+    }
+    
+    public Screen send(AIDKey aid) {
+        if (aid == null || aid == AIDKey.NO_AID) {
+            throw new IllegalArgumentException("An AID key is required");
+        }
+        return screen.execute(this, aid);
+    }
+    
+    public Screen enter() {
+        return send(AIDKey.ENTER);
+    }
+    
+    int[] resolve(FieldIndex fields, int rows, int cols) {
+        int bufferSize = rows * cols;
+        int[] targets = new int[writes.size() * 2];
+        
+        for (int i = 0; i < writes.size(); i++) {
+            Write write = writes.get(i);
+            int fieldNumber = write.fieldNumber;
+            int position = write.position;
+            int limit = Integer.MAX_VALUE;
+            
+            if (write.template != null) {
+                ScreenTemplate.Layout layout = write.template.compile(rows, cols);
+                fieldNumber = layout.fieldNumber(write.templateIndex);
+                if (fieldNumber < 0) {
+                    position = layout.offset(write.templateIndex);
+                    limit = layout.length(write.templateIndex);
+                    if (position < 0) {
+                        throw new IllegalArgumentException("Template entry "
+                                + write.template.getName(write.templateIndex) + " is outside a " + rows + "x" + cols
+                                + " screen");
+                    }
+                }
+            } else if (write.row != NONE) {
+                if (write.row >= rows || write.col >= cols) {
+                    throw new IllegalArgumentException("Row/col " + write.row + "," + write.col
+                            + " is outside a " + rows + "x" + cols + " screen");
+                }
+                position = write.row * cols + write.col;
+            }
+            
+            Field field;
+            boolean wholeField = fieldNumber >= 0;
+            if (wholeField) {
+                field = fields.get(fieldNumber);
+                if (field == null) {
+                    throw new IllegalArgumentException("No field " + fieldNumber + " on screen with "
+                            + fields.size() + " fields");
+                }
+                position = field.getStart();
+            } else {
+                if (position >= bufferSize) {
+                    throw new IllegalArgumentException("Position " + position + " is outside the screen");
+                }
+                field = fields.fieldAt(position);
+                if (field == null) {
+                    throw new IllegalArgumentException("Position " + position + " is not inside a field");
+                }
+            }
+            
+            if (field.isProtected()) {
+                throw new IllegalArgumentException("Field at " + field.getStart() + " is protected");
+            }
+            int end = position + field.getLength() - field.offsetOf(position);
+            int length = write.text.length();
+            if (length > Math.min(end - position, limit)) {
+                throw new IllegalArgumentException("Text of length " + length + " does not fit at " + position);
+            }
+            if (field.isNumeric()) {
+                checkNumeric(write.text, position);
+            }
+            
+            targets[i * 2] = position;
+            targets[i * 2 + 1] = wholeField ? end : position + length;
+        }
+        return targets;
+    }
+    
+    String text(int index) {
+        return writes.get(index).text;
+    }
+    
+    int cursorPosition(int cols) {
+        return cursorRow != NONE ? cursorRow * cols + cursorCol : cursorPosition;
+    }
+    
+    private static void checkNumeric(String text, int position) {
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if ((ch < '0' || ch > '9') && ch != '.' && ch != '-') {
+                throw new IllegalArgumentException("Numeric field at " + position + " does not accept '" + ch + "'");
+            }
+        }
+    }
+    
+    private static class Write {
+        private final int fieldNumber;
+        private final int position;
+        private final int row;
+        private final int col;
+        private final ScreenTemplate template;
+        private final int templateIndex;
+        private final String text;
+        
+        Write(int fieldNumber, int position, int row, int col, ScreenTemplate template, int templateIndex,
+                String text) {
+            if (text == null) {
+                throw new IllegalArgumentException("Text must not be null");
+            }
+            this.fieldNumber = fieldNumber;
+            this.position = position;
+            this.row = row;
+            this.col = col;
+            this.template = template;
+            this.templateIndex = templateIndex;
+            this.text = text;
+        }
+    }
+}
\ No newline at end of file
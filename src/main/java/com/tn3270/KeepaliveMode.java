@@ -0,0 +1,6 @@
+package com.tn3270;
+
+public enum KeepaliveMode {
+    TIMING_MARK,
+    NOP
+}
\ No newline at end of file
@@ -0,0 +1,459 @@
+package com.tn3270;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Logger;
+
+class NioConnection {
+    private static final Logger logger = Logger.getLogger(NioConnection.class.getName());
+    
+    private static final int READ_BUFFER_SIZE = 16384;
+    private static final int PACKET_POOL_SIZE = 4;
+    private static final ByteBuffer[] NO_DATA = {ByteBuffer.allocate(0)};
+    
+    interface Listener {
+        void dataReceived(ByteBuffer data) throws IOException;
+        
+        void connectionClosed(IOException cause);
+    }
+    
+    private final EventLoop loop;
+    private final SSLEngine sslEngine;
+    private final Listener listener;
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    
+    private final Object writeLock = new Object();
+    private final ArrayDeque<ByteBuffer> pendingWrites = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> pendingAppData = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> packetPool = new ArrayDeque<>();
+    private final ByteBuffer[] outbound = new ByteBuffer[1];
+    
+    private SocketChannel channel;
+    private SelectionKey key;
+    private ByteBuffer readBuffer;
+    private ByteBuffer appBuffer;
+    private boolean reading;
+    private boolean taskRunning;
+    private volatile boolean open = true;
+    private volatile boolean transportConnected;
+    
+    NioConnection(EventLoop loop, SSLEngine sslEngine, Listener listener) {
+        this.loop = loop;
+        this.sslEngine = sslEngine;
+        this.listener = listener;
+        
+        if (sslEngine != null) {
+            this.readBuffer = ByteBuffer.allocate(sslEngine.getSession().getPacketBufferSize());
+            this.appBuffer = ByteBuffer.allocate(sslEngine.getSession().getApplicationBufferSize());
+        } else {
+            this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        }
+    }
+    
+    CompletableFuture<Void> connect(InetSocketAddress address) {
+        loop.execute(() -> {
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                key = channel.register(loop.selector(), 0, this);
+                if (channel.connect(address)) {
+                    connected();
+                } else {
+                    key.interestOps(SelectionKey.OP_CONNECT);
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        });
+        return ready;
+    }
+    
+    void startReading() {
+        loop.execute(() -> {
+            reading = true;
+            try {
+                deliverApplicationData();
+                updateInterest();
+            } catch (IOException e) {
+                fail(e);
+            }
+        });
+    }
+    
+    boolean isOpen() {
+        return open;
+    }
+    
+    boolean isTransportConnected() {
+        return transportConnected;
+    }
+    
+    void handle(SelectionKey key) {
+        try {
+            if (key.isValid() && key.isConnectable()) {
+                channel.finishConnect();
+                connected();
+            }
+            if (key.isValid() && key.isWritable()) {
+                flushPending();
+            }
+            if (key.isValid() && key.isReadable()) {
+                read();
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+    
+    void write(ByteBuffer[] data, int count) throws IOException {
+        if (!open) {
+            throw new IOException("Not connected");
+        }
+        
+        synchronized (writeLock) {
+            if (sslEngine == null) {
+                writeOrQueue(data, count);
+            } else if (!pendingAppData.isEmpty()) {
+                queueAppData(data, count);
+            } else {
+                wrap(data, count);
+            }
+        }
+    }
+    
+    void close() {
+        if (loop.inEventLoop()) {
+            closeChannel();
+        } else {
+            open = false;
+            loop.execute(this::closeChannel);
+        }
+    }
+    
+    private void closeChannel() {
+        open = false;
+        if (key != null) {
+            key.cancel();
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.fine("Error closing channel: " + e.getMessage());
+            }
+        }
+    }
+    
+    private void connected() throws IOException {
+        transportConnected = true;
+        if (sslEngine != null) {
+            sslEngine.beginHandshake();
+            updateInterest();
+            processTls();
+        } else {
+            ready.complete(null);
+            updateInterest();
+        }
+    }
+    
+    private void read() throws IOException {
+        int count = channel.read(readBuffer);
+        if (count < 0) {
+            throw new IOException("Connection closed");
+        }
+        
+        if (sslEngine != null) {
+            processTls();
+        } else {
+            readBuffer.flip();
+            try {
+                listener.dataReceived(readBuffer);
+            } finally {
+                readBuffer.clear();
+            }
+        }
+    }
+    
+    private void processTls() throws IOException {
+        while (!taskRunning) {
+            HandshakeStatus status = sslEngine.getHandshakeStatus();
+            
+            if (status == HandshakeStatus.NEED_TASK) {
+                runDelegatedTasks();
+                return;
+            }
+            
+            if (status == HandshakeStatus.NEED_WRAP) {
+                synchronized (writeLock) {
+                    wrap(NO_DATA, 1);
+                }
+                continue;
+            }
+            
+            if (status == HandshakeStatus.NOT_HANDSHAKING) {
+                resumeAppData();
+            }
+            
+            readBuffer.flip();
+            SSLEngineResult result;
+            try {
+                result = sslEngine.unwrap(readBuffer, appBuffer);
+            } finally {
+                readBuffer.compact();
+            }
+            
+            switch (result.getStatus()) {
+                case BUFFER_OVERFLOW:
+                    if (reading && appBuffer.position() > 0) {
+                        deliverApplicationData();
+                    } else {
+                        appBuffer = grow(appBuffer, sslEngine.getSession().getApplicationBufferSize());
+                    }
+                    continue;
+                    
+                case BUFFER_UNDERFLOW:
+                    if (!readBuffer.hasRemaining()) {
+                        readBuffer = grow(readBuffer, sslEngine.getSession().getPacketBufferSize());
+                    }
+                    checkHandshakeFinished();
+                    deliverApplicationData();
+                    return;
+                    
+                case CLOSED:
+                    throw new IOException("Connection closed");
+                    
+                default:
+                    checkHandshakeFinished();
+                    if (result.bytesConsumed() == 0 && result.bytesProduced() == 0
+                            && result.getHandshakeStatus() == HandshakeStatus.NOT_HANDSHAKING) {
+                        deliverApplicationData();
+                        return;
+                    }
+                    break;
+            }
+        }
+    }
+    
+    private void runDelegatedTasks() {
+        taskRunning = true;
+        ForkJoinPool.commonPool().execute(() -> {
+            Runnable task;
+            while ((task = sslEngine.getDelegatedTask()) != null) {
+                task.run();
+            }
+            loop.execute(() -> {
+                taskRunning = false;
+                try {
+                    processTls();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            });
+        });
+    }
+    
+    private void checkHandshakeFinished() throws IOException {
+        if (!ready.isDone() && sslEngine.getHandshakeStatus() == HandshakeStatus.NOT_HANDSHAKING) {
+            ready.complete(null);
+            updateInterest();
+        }
+    }
+    
+    private void deliverApplicationData() throws IOException {
+        if (!reading || appBuffer == null || appBuffer.position() == 0) {
+            return;
+        }
+        
+        appBuffer.flip();
+        try {
+            listener.dataReceived(appBuffer);
+        } finally {
+            appBuffer.clear();
+        }
+    }
+    
+    private void wrap(ByteBuffer[] data, int count) throws IOException {
+        do {
+            ByteBuffer packet = acquirePacketBuffer();
+            SSLEngineResult result = sslEngine.wrap(data, 0, count, packet);
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                throw new IOException("Connection closed");
+            }
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW
+                    && packet.capacity() >= sslEngine.getSession().getPacketBufferSize()) {
+                throw new IOException("TLS record does not fit the packet buffer");
+            }
+            packet.flip();
+            if (packet.hasRemaining()) {
+                outbound[0] = packet;
+                writeOrQueue(outbound, 1);
+                outbound[0] = null;
+            }
+            if (!packet.hasRemaining()) {
+                releasePacketBuffer(packet);
+            }
+            if (result.bytesConsumed() == 0 && result.bytesProduced() == 0
+                    && result.getStatus() == SSLEngineResult.Status.OK && hasRemaining(data, count)) {
+                queueAppData(data, count);
+                requestResume();
+                return;
+            }
+        } while (hasRemaining(data, count));
+    }
+    
+    private void queueAppData(ByteBuffer[] data, int count) {
+        for (int i = 0; i < count; i++) {
+            if (data[i].hasRemaining()) {
+                ByteBuffer copy = ByteBuffer.allocate(data[i].remaining());
+                copy.put(data[i]);
+                copy.flip();
+                pendingAppData.add(copy);
+            }
+        }
+    }
+    
+    private void resumeAppData() throws IOException {
+        synchronized (writeLock) {
+            if (pendingAppData.isEmpty()) {
+                return;
+            }
+            ByteBuffer[] data = pendingAppData.toArray(new ByteBuffer[pendingAppData.size()]);
+            pendingAppData.clear();
+            wrap(data, data.length);
+        }
+    }
+    
+    private void requestResume() {
+        if (!loop.inEventLoop()) {
+            loop.execute(() -> {
+                try {
+                    processTls();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            });
+        }
+    }
+    
+    private void writeOrQueue(ByteBuffer[] data, int count) throws IOException {
+        if (pendingWrites.isEmpty()) {
+            channel.write(data, 0, count);
+        }
+        
+        for (int i = 0; i < count; i++) {
+            ByteBuffer remaining = data[i];
+            if (!remaining.hasRemaining()) {
+                continue;
+            }
+            if (!isPacketBuffer(remaining)) {
+                ByteBuffer copy = ByteBuffer.allocate(remaining.remaining());
+                copy.put(remaining);
+                copy.flip();
+                remaining = copy;
+            }
+            pendingWrites.add(remaining);
+            if (pendingWrites.size() == 1) {
+                requestInterestUpdate();
+            }
+        }
+    }
+    
+    private void flushPending() throws IOException {
+        synchronized (writeLock) {
+            if (!pendingWrites.isEmpty()) {
+                ByteBuffer[] buffers = pendingWrites.toArray(new ByteBuffer[pendingWrites.size()]);
+                channel.write(buffers);
+                for (ByteBuffer buffer : buffers) {
+                    if (buffer.hasRemaining()) {
+                        break;
+                    }
+                    pendingWrites.poll();
+                    releasePacketBuffer(buffer);
+                }
+            }
+        }
+        updateInterest();
+    }
+    
+    private ByteBuffer acquirePacketBuffer() {
+        ByteBuffer packet = packetPool.poll();
+        if (packet == null || packet.capacity() < sslEngine.getSession().getPacketBufferSize()) {
+            packet = ByteBuffer.allocate(sslEngine.getSession().getPacketBufferSize());
+        }
+        packet.clear();
+        return packet;
+    }
+    
+    private void releasePacketBuffer(ByteBuffer buffer) {
+        if (isPacketBuffer(buffer) && packetPool.size() < PACKET_POOL_SIZE) {
+            packetPool.add(buffer);
+        }
+    }
+    
+    private boolean isPacketBuffer(ByteBuffer buffer) {
+        return sslEngine != null && buffer.capacity() == sslEngine.getSession().getPacketBufferSize();
+    }
+    
+    private static boolean hasRemaining(ByteBuffer[] data, int count) {
+        for (int i = 0; i < count; i++) {
+            if (data[i].hasRemaining()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private void requestInterestUpdate() {
+        if (loop.inEventLoop()) {
+            updateInterest();
+        } else {
+            loop.execute(this::updateInterest);
+        }
+    }
+    
+    private void updateInterest() {
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        
+        int ops = 0;
+        if (reading || !ready.isDone()) {
+            ops |= SelectionKey.OP_READ;
+        }
+        synchronized (writeLock) {
+            if (!pendingWrites.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+        }
+        key.interestOps(ops);
+    }
+    
+    private void fail(IOException cause) {
+        if (!open && ready.isDone()) {
+            return;
+        }
+        
+        closeChannel();
+        if (!ready.isDone()) {
+            ready.completeExceptionally(cause);
+        } else {
+            listener.connectionClosed(cause);
+        }
+    }
+    
+    private static ByteBuffer grow(ByteBuffer buffer, int minimum) {
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, minimum));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+}
\ No newline at end of file
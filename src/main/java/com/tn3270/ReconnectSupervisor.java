@@ -0,0 +1,278 @@
+package com.tn3270;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+public class ReconnectSupervisor implements Closeable, Tn3270.ConnectionListener {
+    private static final Logger logger = Logger.getLogger(ReconnectSupervisor.class.getName());
+    private static final ConcurrentHashMap<String, AtomicInteger> hostPermits = new ConcurrentHashMap<>();
+    private static final AtomicInteger workerCount = new AtomicInteger();
+    private static final ExecutorService workers = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "TN3270-Reconnect-" + workerCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static volatile int maxConcurrentPerHost = 4;
+    
+    public interface Restore {
+        void run(Tn3270 session, long fingerprint) throws Exception;
+    }
+    
+    private final Tn3270 session;
+    
+    private long initialDelay = 1000;
+    private long maxDelay = 60000;
+    private int maxAttempts;
+    private long restoreTimeout = 30000;
+    private SessionPool.Routine logon;
+    private Restore restore;
+    
+    private CompletableFuture<Tn3270> recovery;
+    private ScheduledFuture<?> scheduled;
+    private long lastFingerprint;
+    private volatile int attempts;
+    private volatile boolean recovering;
+    private volatile boolean started;
+    private volatile boolean closed;
+    
+    public ReconnectSupervisor(Tn3270 session) {
+        if (session == null) {
+            throw new IllegalArgumentException("Session must not be null");
+        }
+        this.session = session;
+    }
+    
+    public static void setMaxConcurrentPerHost(int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("Concurrency limit must be at least 1");
+        }
+        maxConcurrentPerHost = max;
+    }
+    
+    public static int getMaxConcurrentPerHost() {
+        return maxConcurrentPerHost;
+    }
+    
+    public ReconnectSupervisor setInitialDelay(long delay, TimeUnit unit) {
+        if (delay <= 0) {
+            throw new IllegalArgumentException("Initial delay must be positive");
+        }
+        this.initialDelay = unit.toMillis(delay);
+        return this;
+    }
+    
+    public ReconnectSupervisor setMaxDelay(long delay, TimeUnit unit) {
+        if (delay <= 0) {
+            throw new IllegalArgumentException("Maximum delay must be positive");
+        }
+        this.maxDelay = unit.toMillis(delay);
+        return this;
+    }
+    
+    public ReconnectSupervisor setMaxAttempts(int attempts) {
+        if (attempts < 0) {
+            throw new IllegalArgumentException("Maximum attempts must not be negative");
+        }
+        this.maxAttempts = attempts;
+        return this;
+    }
+    
+    public ReconnectSupervisor setLogon(SessionPool.Routine logon) {
+        this.logon = logon;
+        return this;
+    }
+    
+    public ReconnectSupervisor setRestore(Restore restore) {
+        this.restore = restore;
+        return this;
+    }
+    
+    public ReconnectSupervisor setRestoreTimeout(long timeout, TimeUnit unit) {
+        this.restoreTimeout = unit.toMillis(timeout);
+        return this;
+    }
+    
+    public synchronized ReconnectSupervisor start() {
+        if (closed) {
+            throw new IllegalStateException("Supervisor is closed");
+        }
+        if (!started) {
+            started = true;
+            session.addConnectionListener(this);
+        }
+        return this;
+    }
+    
+    public synchronized CompletableFuture<Tn3270> whenConnected() {
+        if (recovery != null && !recovery.isDone()) {
+            return recovery;
+        }
+        if (closed) {
+            CompletableFuture<Tn3270> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("Supervisor is closed"));
+            return failed;
+        }
+        if (!session.isConnected() && started) {
+            recover(new IOException("Not connected"));
+            return recovery;
+        }
+        return CompletableFuture.completedFuture(session);
+    }
+    
+    public boolean isRecovering() {
+        return recovering;
+    }
+    
+    public int getAttempts() {
+        return attempts;
+    }
+    
+    public synchronized long getLastFingerprint() {
+        return lastFingerprint;
+    }
+    
+    public Tn3270 getSession() {
+        return session;
+    }
+    
+    @Override
+    public void connectionLost(Tn3270 session, IOException cause) {
+        recover(cause);
+    }
+    
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        session.removeConnectionListener(this);
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+        recovering = false;
+        if (recovery != null) {
+            recovery.completeExceptionally(new IllegalStateException("Supervisor is closed"));
+        }
+    }
+    
+    private synchronized void recover(IOException cause) {
+        if (closed || recovering) {
+            return;
+        }
+        recovering = true;
+        attempts = 0;
+        lastFingerprint = session.getScreen().getFingerprint();
+        if (recovery == null || recovery.isDone()) {
+            recovery = new CompletableFuture<>();
+        }
+        logger.warning("Lost connection to " + session.getHost() + ", reconnecting: " + cause.getMessage());
+        schedule(backoff(0));
+    }
+    
+    private void attempt() {
+        if (closed) {
+            return;
+        }
+        
+        AtomicInteger permits = hostPermits.computeIfAbsent(session.getHost(), host -> new AtomicInteger());
+        if (permits.incrementAndGet() > maxConcurrentPerHost) {
+            permits.decrementAndGet();
+            reschedule(backoff(0));
+            return;
+        }
+        
+        int attempt = attempts + 1;
+        attempts = attempt;
+        try {
+            session.getScreen().connectionReset();
+            session.connect();
+            if (logon != null) {
+                logon.run(session);
+            }
+            restoreScreen();
+            recovered();
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            session.disconnect();
+            failed(attempt, e);
+        } finally {
+            permits.decrementAndGet();
+        }
+    }
+    
+    private void restoreScreen() throws Exception {
+        long fingerprint;
+        synchronized (this) {
+            fingerprint = lastFingerprint;
+        }
+        if (restore == null) {
+            return;
+        }
+        
+        restore.run(session, fingerprint);
+        if (fingerprint != 0 && restoreTimeout > 0) {
+            session.getScreen().await(ScreenCondition.fingerprint(fingerprint), restoreTimeout,
+                    TimeUnit.MILLISECONDS).get();
+        }
+    }
+    
+    private synchronized void recovered() {
+        if (closed) {
+            session.disconnect();
+            return;
+        }
+        if (!session.isConnected()) {
+            failed(attempts, new IOException("Connection lost during recovery"));
+            return;
+        }
+        recovering = false;
+        logger.info("Reconnected to " + session.getHost() + " after " + attempts + " attempt(s)");
+        recovery.complete(session);
+    }
+    
+    private synchronized void failed(int attempt, Exception cause) {
+        if (closed) {
+            return;
+        }
+        if (maxAttempts > 0 && attempt >= maxAttempts) {
+            recovering = false;
+            logger.severe("Giving up on " + session.getHost() + " after " + attempt + " attempt(s): " + cause);
+            recovery.completeExceptionally(new IOException("Reconnect to " + session.getHost() + " failed after "
+                    + attempt + " attempt(s)", cause));
+            return;
+        }
+        logger.warning("Reconnect attempt " + attempt + " to " + session.getHost() + " failed: " + cause);
+        schedule(backoff(attempt));
+    }
+    
+    private synchronized void reschedule(long delay) {
+        if (!closed) {
+            schedule(delay);
+        }
+    }
+    
+    private void schedule(long delay) {
+        scheduled = SharedTimer.get().schedule(() -> workers.execute(this::attempt), delay, TimeUnit.MILLISECONDS);
+    }
+    
+    private long backoff(int attempt) {
+        long ceiling = Math.min(maxDelay, initialDelay << Math.min(attempt, 30));
+        if (ceiling <= 0) {
+            ceiling = maxDelay;
+        }
+        long half = ceiling / 2;
+        return half + ThreadLocalRandom.current().nextLong(ceiling - half + 1);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,92 @@
+package com.tn3270;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+class RecordAssembler {
+    private static final Logger logger = Logger.getLogger(RecordAssembler.class.getName());
+    
+    private static final int INITIAL_CAPACITY = 4096;
+    
+    private int maxRecordSize;
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int length;
+    private boolean overflowed;
+    
+    RecordAssembler(int maxRecordSize) {
+        this.maxRecordSize = maxRecordSize;
+    }
+    
+    void setMaxRecordSize(int maxRecordSize) {
+        this.maxRecordSize = maxRecordSize;
+    }
+    
+    int getMaxRecordSize() {
+        return maxRecordSize;
+    }
+    
+    int length() {
+        return length;
+    }
+    
+    boolean hasPending() {
+        return length > 0 || overflowed;
+    }
+    
+    boolean isFull() {
+        return length >= maxRecordSize;
+    }
+    
+    int remainingCapacity() {
+        return maxRecordSize - length;
+    }
+    
+    void append(byte[] data, int offset, int count) {
+        if (count > maxRecordSize - length) {
+            overflowed = true;
+            count = maxRecordSize - length;
+        }
+        if (length + count > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.min(maxRecordSize, Math.max(buffer.length * 2, length + count)));
+        }
+        System.arraycopy(data, offset, buffer, length, count);
+        length += count;
+    }
+    
+    void append(byte b) {
+        if (length >= maxRecordSize) {
+            overflowed = true;
+            return;
+        }
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.min(maxRecordSize, buffer.length * 2));
+        }
+        buffer[length++] = b;
+    }
+    
+    byte[] complete() {
+        if (overflowed) {
+            logger.warning("Discarding inbound record larger than " + maxRecordSize + " bytes");
+            reset();
+            return null;
+        }
+        if (length == 0) {
+            return null;
+        }
+        
+        byte[] record = Arrays.copyOf(buffer, length);
+        length = 0;
+        return record;
+    }
+    
+    byte[] completePartial() {
+        byte[] record = length == 0 ? null : Arrays.copyOf(buffer, length);
+        reset();
+        return record;
+    }
+    
+    void reset() {
+        length = 0;
+        overflowed = false;
+    }
+}
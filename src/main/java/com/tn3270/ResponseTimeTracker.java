@@ -0,0 +1,163 @@
+package com.tn3270;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+public class ResponseTimeTracker {
+    static final int DEFAULT_CAPACITY = 1024;
+    
+    private final long[] responseTimes;
+    private final long[] firstByteTimes;
+    private long count;
+    private Sample last;
+    
+    private long pendingSequence = -1;
+    private AIDKey pendingAid;
+    private long pendingSent;
+    private long pendingFirstByte;
+    private volatile boolean awaitingFirstByte;
+    
+    ResponseTimeTracker() {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    ResponseTimeTracker(int capacity) {
+        this.responseTimes = new long[capacity];
+        this.firstByteTimes = new long[capacity];
+    }
+    
+    synchronized void sent(long sequence, AIDKey aid, long nanos) {
+        pendingSequence = sequence;
+        pendingAid = aid;
+        pendingSent = nanos;
+        pendingFirstByte = 0;
+        awaitingFirstByte = true;
+    }
+    
+    void firstByte(long nanos) {
+        if (!awaitingFirstByte) {
+            return;
+        }
+        synchronized (this) {
+            if (awaitingFirstByte) {
+                pendingFirstByte = nanos;
+                awaitingFirstByte = false;
+            }
+        }
+    }
+    
+    synchronized void restored(long nanos) {
+        if (pendingSequence < 0) {
+            return;
+        }
+        long firstByte = awaitingFirstByte ? nanos : pendingFirstByte;
+        last = new Sample(pendingSequence, pendingAid, pendingSent, firstByte, nanos);
+        
+        int slot = (int) (count++ % responseTimes.length);
+        responseTimes[slot] = last.getResponseTime();
+        firstByteTimes[slot] = last.getFirstByteTime();
+        pendingSequence = -1;
+        awaitingFirstByte = false;
+    }
+    
+    synchronized void cancel(long sequence) {
+        if (pendingSequence == sequence) {
+            pendingSequence = -1;
+            awaitingFirstByte = false;
+        }
+    }
+    
+    public synchronized long getCount() {
+        return count;
+    }
+    
+    public synchronized Sample getLast() {
+        return last;
+    }
+    
+    public synchronized boolean isPending() {
+        return pendingSequence >= 0;
+    }
+    
+    public long getResponseTimePercentile(double percentile, TimeUnit unit) {
+        long nanos = percentile(responseTimes, percentile);
+        return nanos < 0 ? -1 : unit.convert(nanos, TimeUnit.NANOSECONDS);
+    }
+    
+    public long getFirstBytePercentile(double percentile, TimeUnit unit) {
+        long nanos = percentile(firstByteTimes, percentile);
+        return nanos < 0 ? -1 : unit.convert(nanos, TimeUnit.NANOSECONDS);
+    }
+    
+    public synchronized void reset() {
+        count = 0;
+        last = null;
+    }
+    
+    private long percentile(long[] values, double percentile) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be in (0, 100]: " + percentile);
+        }
+        long[] sorted;
+        synchronized (this) {
+            int size = (int) Math.min(count, values.length);
+            if (size == 0) {
+                return -1;
+            }
+            sorted = Arrays.copyOf(values, size);
+        }
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+    
+    public static final class Sample {
+        private final long sequence;
+        private final AIDKey aid;
+        private final long sentNanos;
+        private final long firstByteNanos;
+        private final long restoredNanos;
+        
+        Sample(long sequence, AIDKey aid, long sentNanos, long firstByteNanos, long restoredNanos) {
+            this.sequence = sequence;
+            this.aid = aid;
+            this.sentNanos = sentNanos;
+            this.firstByteNanos = firstByteNanos;
+            this.restoredNanos = restoredNanos;
+        }
+        
+        public long getSequence() {
+            return sequence;
+        }
+        
+        public AIDKey getAid() {
+            return aid;
+        }
+        
+        public long getSentNanos() {
+            return sentNanos;
+        }
+        
+        public long getFirstByteNanos() {
+            return firstByteNanos;
+        }
+        
+        public long getRestoredNanos() {
+            return restoredNanos;
+        }
+        
+        public long getFirstByteTime() {
+            return firstByteNanos - sentNanos;
+        }
+        
+        public long getResponseTime() {
+            return restoredNanos - sentNanos;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("Sample[seq=%d, aid=%s, firstByte=%dus, response=%dus]", sequence, aid,
+                    getFirstByteTime() / 1000, getResponseTime() / 1000);
+        }
+    }
+}
\ No newline at end of file
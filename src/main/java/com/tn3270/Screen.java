@@ -1,76 +1,146 @@
 package com.tn3270;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.Condition;
+import java.util.function.Function;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.logging.Logger;
 import com.tn3270.ui.ScreenUI;
 
 public class Screen {
+    private static final Logger logger = Logger.getLogger(Screen.class.getName());
+    
     private static final int DEFAULT_ROWS = 24;
     private static final int DEFAULT_COLS = 80;
+    private static final int TEXT_MATCHER_LIMIT = 32;
+    private static final AtomicInteger callbackCount = new AtomicInteger();
+    private static final ExecutorService sharedCallbacks = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "TN3270-Callback-" + callbackCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
     
     private final Tn3270 tn3270;
-    private final char[] buffer;
-    private final byte[] attributes;
-    private final Field[] fields;
-    
+    private final DataStreamBuilder builder = new DataStreamBuilder(this);
+    private final DataStreamProcessor processor = new DataStreamProcessor(this);
+    private char[] buffer;
+    private byte[] attributes;
+    private byte[] highlights;
+    private byte[] colors;
+    private boolean[] fieldAttributeMarks;
+    private final FieldIndex fieldIndex;
+    private boolean fieldIndexStale;
+    private volatile ScreenSnapshot snapshot;
+    private boolean snapshotStale = true;
+    private final BitSet snapshotRows = new BitSet();
+    private final FingerprintTracker fingerprintTracker = new FingerprintTracker();
+    private final BitSet rewrittenAttributes = new BitSet();
+    
+    private int defaultRows;
+    private int defaultCols;
+    private int alternateRows;
+    private int alternateCols;
+    private boolean alternateSize;
     private int rows;
     private int cols;
     private int bufferSize;
     private int cursorPosition;
     private boolean insertMode;
     private boolean keyboardLocked;
+    private AIDKey aid = AIDKey.NO_AID;
     
     private final ReentrantLock lock = new ReentrantLock();
     private final Condition dataArrived = lock.newCondition();
-    private volatile boolean modified;
+    private final Queue<Waiter<?>> waiters = new ConcurrentLinkedQueue<>();
+    private volatile Executor callbackExecutor;
+    private final ConcurrentHashMap<String, ScreenMatcher> textMatchers = new ConcurrentHashMap<>();
+    private final TypeAheadQueue typeAhead = new TypeAheadQueue();
+    private final ResponseTimeTracker responseTimes = new ResponseTimeTracker();
+    private long aidSequence;
     
     private final List<ScreenUI> attachedUIs = new CopyOnWriteArrayList<>();
+    private final Queue<ScreenUpdate> pendingUpdates = new ConcurrentLinkedQueue<>();
+    private final Object uiMonitor = new Object();
+    private final UIDispatcher uiDispatcher = new UIDispatcher(this::updateAllUIs);
+    private final BitSet dirtyRows = new BitSet();
+    private boolean fullRefresh = true;
+    private int publishedRows;
+    private int publishedCols;
+    private int publishedCursorPosition = -1;
+    private boolean publishedKeyboardLocked;
     
     public Screen(Tn3270 tn3270) {
         this(tn3270, DEFAULT_ROWS, DEFAULT_COLS);
     }
     
     public Screen(Tn3270 tn3270, int rows, int cols) {
+        this(tn3270, rows, cols, rows, cols);
+    }
+    
+    public Screen(Tn3270 tn3270, TerminalType terminalType) {
+        this(tn3270, DEFAULT_ROWS, DEFAULT_COLS, terminalType.getRows(), terminalType.getCols());
+    }
+    
+    public Screen(Tn3270 tn3270, int defaultRows, int defaultCols, int alternateRows, int alternateCols) {
         this.tn3270 = tn3270;
-        this.rows = rows;
-        this.cols = cols;
-        this.bufferSize = rows * cols;
-        this.buffer = new char[bufferSize];
-        this.attributes = new byte[bufferSize];
-        this.fields = new Field[bufferSize];
-        clear();
+        this.fieldIndex = new FieldIndex(defaultRows * defaultCols);
+        configure(defaultRows, defaultCols, alternateRows, alternateCols);
+        publishSnapshot();
     }
     
     public Screen putString(String text) {
+        if (queueTypeAhead(() -> putString(text))) {
+            return this;
+        }
         return putString(cursorPosition, text);
     }
     
     public Screen putString(int position, String text) {
+        if (queueTypeAhead(() -> putString(position, text))) {
+            return this;
+        }
         lock.lock();
         try {
             if (text == null || text.isEmpty()) {
                 return this;
             }
             
-            position = normalizePosition(position);
-            Field field = getFieldAt(position);
+            int start = normalizePosition(position);
+            Field field = getFieldAt(start);
             
             if (field != null && !field.isProtected()) {
-                int maxLength = Math.min(text.length(), field.getLength() - (position - field.getStart()));
+                int maxLength = Math.min(text.length(), field.getLength() - field.offsetOf(start));
                 for (int i = 0; i < maxLength; i++) {
-                    int pos = (position + i) % bufferSize;
+                    int pos = (start + i) % bufferSize;
                     buffer[pos] = text.charAt(i);
-                    modified = true;
                 }
-                cursorPosition = (position + maxLength) % bufferSize;
+                if (maxLength > 0) {
+                    markDirty(start, start + maxLength);
+                    markModified(start);
+                }
+                cursorPosition = (start + maxLength) % bufferSize;
             }
         } finally {
-            lock.unlock();
+            unlockAndPublish();
         }
         return this;
     }
@@ -216,23 +286,35 @@ public class Screen {
     }
     
     public Screen clear() {
-        sendAID(AIDKey.CLEAR);
-        lock.lock();
+        if (queueTypeAhead(this::clear)) {
+            return this;
+        }
         try {
-            for (int i = 0; i < bufferSize; i++) {
-                buffer[i] = ' ';
-                attributes[i] = 0;
-                fields[i] = null;
+            synchronized (builder) {
+                ByteBuffer record;
+                long sequence;
+                lock.lock();
+                try {
+                    record = builder.buildAIDRecord(AIDKey.CLEAR);
+                    sequence = lockKeyboardFor(AIDKey.CLEAR);
+                    setAlternateSize(false);
+                    eraseAll();
+                    cursorPosition = 0;
+                } finally {
+                    unlockAndPublish();
+                }
+                transmitAID(AIDKey.CLEAR, record, sequence);
             }
-            cursorPosition = 0;
-            modified = false;
         } finally {
-            lock.unlock();
+            notifyWaiters();
         }
         return this;
     }
     
     public Screen tab() {
+        if (queueTypeAhead(this::tab)) {
+            return this;
+        }
         lock.lock();
         try {
             Field nextField = getNextUnprotectedField(cursorPosition);
@@ -240,12 +322,15 @@ public class Screen {
                 cursorPosition = nextField.getStart();
             }
         } finally {
-            lock.unlock();
+            unlockAndPublish();
         }
         return this;
     }
     
     public Screen backTab() {
+        if (queueTypeAhead(this::backTab)) {
+            return this;
+        }
         lock.lock();
         try {
             Field prevField = getPreviousUnprotectedField(cursorPosition);
@@ -253,12 +338,15 @@ public class Screen {
                 cursorPosition = prevField.getStart();
             }
         } finally {
-            lock.unlock();
+            unlockAndPublish();
         }
         return this;
     }
     
     public Screen home() {
+        if (queueTypeAhead(this::home)) {
+            return this;
+        }
         lock.lock();
         try {
             Field firstField = getFirstUnprotectedField();
@@ -268,27 +356,28 @@ public class Screen {
                 cursorPosition = 0;
             }
         } finally {
-            lock.unlock();
+            unlockAndPublish();
         }
         return this;
     }
     
     public Screen end() {
+        if (queueTypeAhead(this::end)) {
+            return this;
+        }
         lock.lock();
         try {
             Field field = getFieldAt(cursorPosition);
             if (field != null) {
-                int endPos = field.getStart() + field.getLength() - 1;
-                while (endPos > field.getStart() && buffer[endPos] == ' ') {
+                int fieldEnd = field.getStart() + field.getLength();
+                int endPos = fieldEnd - 1;
+                while (endPos > field.getStart() && buffer[endPos % bufferSize] == ' ') {
                     endPos--;
                 }
-                cursorPosition = endPos + 1;
-                if (cursorPosition >= field.getStart() + field.getLength()) {
-                    cursorPosition = field.getStart() + field.getLength() - 1;
-                }
+                cursorPosition = Math.min(endPos + 1, fieldEnd - 1) % bufferSize;
             }
         } finally {
-            lock.unlock();
+            unlockAndPublish();
         }
         return this;
     }
@@ -298,11 +387,14 @@ public class Screen {
     }
     
     public Screen left(int count) {
+        if (queueTypeAhead(() -> left(count))) {
+            return this;
+        }
         lock.lock();
         try {
             cursorPosition = Math.max(0, cursorPosition - count);
         } finally {
-            lock.unlock();
+            unlockAndPublish();
         }
         return this;
     }
@@ -312,11 +404,14 @@ public class Screen {
     }
     
     public Screen right(int count) {
+        if (queueTypeAhead(() -> right(count))) {
+            return this;
+        }
         lock.lock();
         try {
             cursorPosition = Math.min(bufferSize - 1, cursorPosition + count);
         } finally {
-            lock.unlock();
+            unlockAndPublish();
         }
         return this;
     }
@@ -326,12 +421,15 @@ public class Screen {
     }
     
     public Screen up(int count) {
+        if (queueTypeAhead(() -> up(count))) {
+            return this;
+        }
         lock.lock();
         try {
             int newRow = Math.max(0, getRow(cursorPosition) - count);
             cursorPosition = newRow * cols + getCol(cursorPosition);
         } finally {
-            lock.unlock();
+            unlockAndPublish();
         }
         return this;
     }
@@ -341,35 +439,45 @@ public class Screen {
     }
     
     public Screen down(int count) {
+        if (queueTypeAhead(() -> down(count))) {
+            return this;
+        }
         lock.lock();
         try {
             int newRow = Math.min(rows - 1, getRow(cursorPosition) + count);
             cursorPosition = newRow * cols + getCol(cursorPosition);
         } finally {
-            lock.unlock();
+            unlockAndPublish();
         }
         return this;
     }
     
     public Screen delete() {
+        if (queueTypeAhead(this::delete)) {
+            return this;
+        }
         lock.lock();
         try {
             Field field = getFieldAt(cursorPosition);
             if (field != null && !field.isProtected()) {
-                int fieldEnd = field.getStart() + field.getLength();
+                int fieldEnd = cursorPosition + field.getLength() - field.offsetOf(cursorPosition);
                 for (int i = cursorPosition; i < fieldEnd - 1; i++) {
-                    buffer[i] = buffer[i + 1];
+                    buffer[i % bufferSize] = buffer[(i + 1) % bufferSize];
                 }
-                buffer[fieldEnd - 1] = ' ';
-                modified = true;
+                buffer[(fieldEnd - 1) % bufferSize] = ' ';
+                markDirty(cursorPosition, fieldEnd);
+                markModified(cursorPosition);
             }
         } finally {
-            lock.unlock();
+            unlockAndPublish();
         }
         return this;
     }
     
     public Screen backspace() {
+        if (queueTypeAhead(this::backspace)) {
+            return this;
+        }
         lock.lock();
         try {
             if (cursorPosition > 0) {
@@ -377,41 +485,42 @@ public class Screen {
                 delete();
             }
         } finally {
-            lock.unlock();
+            unlockAndPublish();
         }
         return this;
     }
     
     public Screen eraseEOF() {
+        if (queueTypeAhead(this::eraseEOF)) {
+            return this;
+        }
         lock.lock();
         try {
             Field field = getFieldAt(cursorPosition);
             if (field != null && !field.isProtected()) {
-                int fieldEnd = field.getStart() + field.getLength();
-                for (int i = cursorPosition; i < fieldEnd; i++) {
-                    buffer[i] = ' ';
-                }
-                modified = true;
+                eraseRange(cursorPosition, cursorPosition + field.getLength() - field.offsetOf(cursorPosition));
+                markModified(cursorPosition);
             }
         } finally {
-            lock.unlock();
+            unlockAndPublish();
         }
         return this;
     }
     
     public Screen eraseField() {
+        if (queueTypeAhead(this::eraseField)) {
+            return this;
+        }
         lock.lock();
         try {
             Field field = getFieldAt(cursorPosition);
             if (field != null && !field.isProtected()) {
-                for (int i = field.getStart(); i < field.getStart() + field.getLength(); i++) {
-                    buffer[i] = ' ';
-                }
+                eraseRange(field.getStart(), field.getStart() + field.getLength());
                 cursorPosition = field.getStart();
-                modified = true;
+                markModified(cursorPosition);
             }
         } finally {
-            lock.unlock();
+            unlockAndPublish();
         }
         return this;
     }
@@ -420,9 +529,11 @@ public class Screen {
         sendAID(AIDKey.RESET);
         lock.lock();
         try {
+            typeAhead.clear();
+            responseTimes.cancel(aidSequence);
             keyboardLocked = false;
         } finally {
-            lock.unlock();
+            unlockAndPublish();
         }
         return this;
     }
@@ -442,15 +553,108 @@ public class Screen {
     }
     
     public Screen setCursorPosition(int position) {
+        if (queueTypeAhead(() -> setCursorPosition(position))) {
+            return this;
+        }
         lock.lock();
         try {
             cursorPosition = normalizePosition(position);
+        } finally {
+            unlockAndPublish();
+        }
+        return this;
+    }
+    
+    public Screen setTypeAhead(int depth) {
+        return setTypeAhead(depth, TypeAheadPolicy.REJECT);
+    }
+    
+    public Screen setTypeAhead(int depth, TypeAheadPolicy policy) {
+        lock.lock();
+        try {
+            typeAhead.configure(depth, policy);
         } finally {
             lock.unlock();
         }
         return this;
     }
     
+    public int getTypeAheadDepth() {
+        return typeAhead.getDepth();
+    }
+    
+    public TypeAheadPolicy getTypeAheadPolicy() {
+        return typeAhead.getPolicy();
+    }
+    
+    public int getPendingTypeAhead() {
+        lock.lock();
+        try {
+            return typeAhead.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public InputBatch batch() {
+        return new InputBatch(this);
+    }
+    
+    public CompletableFuture<Screen> waitForUnlockAsync() {
+        return waitForUnlockAsync(30, TimeUnit.SECONDS);
+    }
+    
+    public CompletableFuture<Screen> waitForUnlockAsync(long timeout, TimeUnit unit) {
+        return await(ScreenCondition.keyboardUnlocked(), timeout, unit);
+    }
+    
+    public CompletableFuture<Screen> waitForTextAsync(String text) {
+        return waitForTextAsync(text, 30, TimeUnit.SECONDS);
+    }
+    
+    public CompletableFuture<Screen> waitForTextAsync(String text, long timeout, TimeUnit unit) {
+        return await(ScreenCondition.containsText(text), timeout, unit);
+    }
+    
+    public CompletableFuture<Screen> await(ScreenCondition condition) {
+        return await(condition, 0, TimeUnit.MILLISECONDS);
+    }
+    
+    public CompletableFuture<Screen> await(ScreenCondition condition, long timeout, TimeUnit unit) {
+        return register(current -> condition.test(current) ? this : null, timeout, unit);
+    }
+    
+    public CompletableFuture<ScreenPattern> waitForAny(ScreenPattern... patterns) {
+        return waitForAny(30, TimeUnit.SECONDS, patterns);
+    }
+    
+    public CompletableFuture<ScreenPattern> waitForAny(long timeout, TimeUnit unit, ScreenPattern... patterns) {
+        return waitForAny(ScreenMatcher.compile(patterns), timeout, unit);
+    }
+    
+    public CompletableFuture<ScreenPattern> waitForAny(ScreenMatcher matcher, long timeout, TimeUnit unit) {
+        return register(matcher::match, timeout, unit);
+    }
+    
+    private <T> CompletableFuture<T> register(Function<ScreenSnapshot, T> evaluator, long timeout, TimeUnit unit) {
+        Waiter<T> waiter = new Waiter<>(evaluator);
+        waiters.add(waiter);
+        waiter.future.whenComplete((screen, error) -> {
+            waiters.remove(waiter);
+            if (waiter.timeoutTask != null) {
+                waiter.timeoutTask.cancel(false);
+            }
+        });
+        
+        if (timeout > 0 && !waiter.future.isDone()) {
+            waiter.timeoutTask = SharedTimer.get().schedule(() -> waiter.fail(
+                    new TimeoutException("Screen condition not met within " + timeout + " " + unit), callbacks()),
+                    timeout, unit);
+        }
+        waiter.check(snapshot, callbacks());
+        return waiter.future;
+    }
+    
     public Screen waitForUnlock() {
         return waitForUnlock(30, TimeUnit.SECONDS);
     }
@@ -475,10 +679,11 @@ public class Screen {
     }
     
     public Screen waitForText(String text, long timeout, TimeUnit unit) {
+        ScreenMatcher matcher = textMatcher(text);
         lock.lock();
         try {
             long nanos = unit.toNanos(timeout);
-            while (!containsText(text) && nanos > 0) {
+            while (matcher.match(snapshot) == null && nanos > 0) {
                 nanos = dataArrived.awaitNanos(nanos);
             }
         } catch (InterruptedException e) {
@@ -489,46 +694,39 @@ public class Screen {
         return this;
     }
     
-    public String getString(int position, int length) {
-        lock.lock();
-        try {
-            position = normalizePosition(position);
-            StringBuilder sb = new StringBuilder();
-            for (int i = 0; i < length && position + i < bufferSize; i++) {
-                sb.append(buffer[position + i]);
+    private ScreenMatcher textMatcher(String text) {
+        ScreenMatcher matcher = textMatchers.get(text);
+        if (matcher == null) {
+            if (textMatchers.size() >= TEXT_MATCHER_LIMIT) {
+                textMatchers.clear();
             }
-            return sb.toString();
-        } finally {
-            lock.unlock();
+            matcher = textMatchers.computeIfAbsent(text, key -> ScreenMatcher.compile(ScreenPattern.text(key)));
         }
+        return matcher;
+    }
+    
+    public String getString(int position, int length) {
+        return snapshot.getString(position, length);
     }
     
     public String getFieldString(int fieldNumber) {
-        lock.lock();
-        try {
-            Field field = getFieldByNumber(fieldNumber);
-            if (field != null) {
-                return getString(field.getStart(), field.getLength()).trim();
-            }
-            return "";
-        } finally {
-            lock.unlock();
-        }
+        return snapshot.getFieldString(fieldNumber);
     }
     
     public List<Field> getFields() {
-        lock.lock();
-        try {
-            List<Field> fieldList = new ArrayList<>();
-            for (Field field : fields) {
-                if (field != null && !fieldList.contains(field)) {
-                    fieldList.add(field);
-                }
-            }
-            return fieldList;
-        } finally {
-            lock.unlock();
-        }
+        return new ArrayList<>(snapshot.getFields());
+    }
+    
+    public ScreenSnapshot getSnapshot() {
+        return snapshot;
+    }
+    
+    public long getVersion() {
+        return snapshot.getVersion();
+    }
+    
+    public long getFingerprint() {
+        return snapshot.getFingerprint();
     }
     
     public int getCursorPosition() {
@@ -547,33 +745,50 @@ public class Screen {
         return keyboardLocked;
     }
     
-    public String getText() {
+    public long getAidSequence() {
         lock.lock();
         try {
-            return new String(buffer);
+            return aidSequence;
         } finally {
             lock.unlock();
         }
     }
     
+    public ResponseTimeTracker getResponseTimes() {
+        return responseTimes;
+    }
+    
+    public String getText() {
+        return snapshot.getText();
+    }
+    
+    public int getRows() {
+        return rows;
+    }
+    
+    public int getCols() {
+        return cols;
+    }
+    
+    public boolean isAlternateSize() {
+        return alternateSize;
+    }
+    
     public String[] getLines() {
-        lock.lock();
-        try {
-            String[] lines = new String[rows];
-            for (int row = 0; row < rows; row++) {
-                lines[row] = new String(buffer, row * cols, cols);
-            }
-            return lines;
-        } finally {
-            lock.unlock();
-        }
+        return snapshot.getLines();
     }
     
     public Screen attachUI(ScreenUI ui) {
         if (ui != null && !attachedUIs.contains(ui)) {
             attachedUIs.add(ui);
             ui.addKeyListener(new UIKeyListener());
-            updateUI(ui);
+            lock.lock();
+            try {
+                fullRefresh = true;
+            } finally {
+                lock.unlock();
+            }
+            uiDispatcher.request();
         }
         return this;
     }
@@ -589,53 +804,251 @@ public class Screen {
         return new ArrayList<>(attachedUIs);
     }
     
-    private void updateAllUIs() {
-        for (ScreenUI ui : attachedUIs) {
-            updateUI(ui);
-        }
+    public Screen setMaxRefreshRate(int refreshesPerSecond) {
+        uiDispatcher.setMaxRefreshRate(refreshesPerSecond);
+        return this;
+    }
+    
+    public int getMaxRefreshRate() {
+        return uiDispatcher.getMaxRefreshRate();
+    }
+    
+    public Screen setUIExecutor(ScheduledExecutorService executor) {
+        uiDispatcher.setExecutor(executor);
+        return this;
+    }
+    
+    public Screen setCallbackExecutor(Executor executor) {
+        this.callbackExecutor = executor;
+        return this;
+    }
+    
+    private Executor callbacks() {
+        Executor executor = callbackExecutor;
+        return executor != null ? executor : sharedCallbacks;
     }
     
-    private void updateUI(ScreenUI ui) {
+    private void updateAllUIs() {
         lock.lock();
         try {
-            ui.updateScreen(buffer.clone(), rows, cols);
-            ui.setCursorPosition(getCursorRow(), getCursorCol());
-            ui.setKeyboardLocked(keyboardLocked);
-            ui.refresh();
+            publishUpdate();
         } finally {
             lock.unlock();
         }
+        deliverUpdates();
+    }
+    
+    private void publishUpdate() {
+        if (attachedUIs.isEmpty()) {
+            dirtyRows.clear();
+            return;
+        }
+        
+        boolean full = fullRefresh || rows != publishedRows || cols != publishedCols;
+        boolean contentChanged = full || dirtyRows.nextSetBit(0) >= 0;
+        boolean cursorChanged = cursorPosition != publishedCursorPosition;
+        boolean lockChanged = keyboardLocked != publishedKeyboardLocked;
+        if (!contentChanged && !cursorChanged && !lockChanged) {
+            return;
+        }
+        
+        boolean deltaUIs = false;
+        boolean fullUIs = false;
+        for (ScreenUI ui : attachedUIs) {
+            if (ui.supportsDeltaUpdates()) {
+                deltaUIs = true;
+            } else {
+                fullUIs = true;
+            }
+        }
+        
+        char[] screen = null;
+        if (full || (contentChanged && fullUIs)) {
+            screen = Arrays.copyOf(buffer, bufferSize);
+        }
+        
+        int rangeCount = 0;
+        int[] rowRanges = null;
+        char[][] rowContents = null;
+        if (!full && contentChanged && deltaUIs) {
+            for (int row = dirtyRows.nextSetBit(0); row >= 0 && row < rows; row = dirtyRows.nextSetBit(row)) {
+                row = dirtyRows.nextClearBit(row);
+                rangeCount++;
+            }
+            rowRanges = new int[rangeCount * 2];
+            rowContents = new char[rangeCount][];
+            int range = 0;
+            for (int row = dirtyRows.nextSetBit(0); row >= 0 && row < rows; row = dirtyRows.nextSetBit(row)) {
+                int end = Math.min(dirtyRows.nextClearBit(row), rows);
+                rowRanges[range * 2] = row;
+                rowRanges[range * 2 + 1] = end;
+                rowContents[range++] = Arrays.copyOfRange(buffer, row * cols, end * cols);
+                row = end;
+            }
+        }
+        
+        pendingUpdates.add(new ScreenUpdate(rows, cols, screen, rowRanges, rowContents, rangeCount, contentChanged,
+                full, cursorChanged, getCursorRow(), getCursorCol(), lockChanged, keyboardLocked));
+        
+        dirtyRows.clear();
+        fullRefresh = false;
+        publishedRows = rows;
+        publishedCols = cols;
+        publishedCursorPosition = cursorPosition;
+        publishedKeyboardLocked = keyboardLocked;
+    }
+    
+    private void requestUIUpdate() {
+        if (!attachedUIs.isEmpty()) {
+            uiDispatcher.request();
+        }
+    }
+    
+    private void deliverUpdates() {
+        synchronized (uiMonitor) {
+            ScreenUpdate update;
+            while ((update = pendingUpdates.poll()) != null) {
+                update.deliver(attachedUIs);
+            }
+        }
     }
     
     void processIncomingData(byte[] data) {
-        lock.lock();
         try {
-            DataStreamProcessor processor = new DataStreamProcessor(this);
-            processor.process(data);
-            dataArrived.signalAll();
-            updateAllUIs();
+            synchronized (builder) {
+                lock.lock();
+                try {
+                    processor.process(data);
+                    snapshotStale = true;
+                    if (!keyboardLocked && !typeAhead.isEmpty()) {
+                        typeAhead.release(() -> keyboardLocked);
+                    }
+                    dataArrived.signalAll();
+                } finally {
+                    unlockAndPublish();
+                }
+            }
         } finally {
-            lock.unlock();
+            notifyWaiters();
         }
+        requestUIUpdate();
     }
     
     private void sendAID(AIDKey aid) {
+        if (aid != AIDKey.RESET && aid != AIDKey.ATTN && aid != AIDKey.SYSREQ
+                && queueTypeAhead(() -> sendAID(aid))) {
+            return;
+        }
         try {
-            DataStreamBuilder builder = new DataStreamBuilder(this);
-            byte[] data = builder.buildAIDData(aid);
-            tn3270.sendData(data);
-            
+            synchronized (builder) {
+                ByteBuffer record;
+                long sequence;
+                lock.lock();
+                try {
+                    record = builder.buildAIDRecord(aid);
+                    sequence = lockKeyboardFor(aid);
+                } finally {
+                    unlockAndPublish();
+                }
+                transmitAID(aid, record, sequence);
+            }
+        } finally {
+            notifyWaiters();
+        }
+    }
+    
+    Screen execute(InputBatch batch, AIDKey aid) {
+        if (queueTypeAhead(() -> execute(batch, aid))) {
+            return this;
+        }
+        try {
+            synchronized (builder) {
+                ByteBuffer record = null;
+                long sequence = 0;
+                lock.lock();
+                try {
+                    if (keyboardLocked) {
+                        throw new IllegalStateException("Keyboard is locked");
+                    }
+                    
+                    int[] targets = batch.resolve(fields(), rows, cols);
+                    for (int i = 0; i < batch.size(); i++) {
+                        int start = targets[i * 2];
+                        int end = targets[i * 2 + 1];
+                        String text = batch.text(i);
+                        for (int j = 0; j < text.length(); j++) {
+                            buffer[(start + j) % bufferSize] = text.charAt(j);
+                        }
+                        eraseRange(start + text.length(), end);
+                        if (start < end) {
+                            markDirty(start, end);
+                            markModified(start);
+                        }
+                        cursorPosition = (start + text.length()) % bufferSize;
+                    }
+                    
+                    int cursor = batch.cursorPosition(cols);
+                    if (cursor >= 0) {
+                        cursorPosition = normalizePosition(cursor);
+                    }
+                    if (aid != null) {
+                        record = builder.buildAIDRecord(aid);
+                        sequence = lockKeyboardFor(aid);
+                    }
+                } finally {
+                    unlockAndPublish();
+                }
+                if (record != null) {
+                    transmitAID(aid, record, sequence);
+                }
+            }
+        } finally {
+            notifyWaiters();
+        }
+        return this;
+    }
+    
+    private long lockKeyboardFor(AIDKey aid) {
+        this.aid = aid;
+        keyboardLocked = true;
+        aidSequence++;
+        responseTimes.sent(aidSequence, aid, System.nanoTime());
+        return aidSequence;
+    }
+    
+    private void transmitAID(AIDKey aid, ByteBuffer record, long sequence) {
+        try {
+            tn3270.sendRecord(record);
+        } catch (IOException e) {
             lock.lock();
             try {
-                keyboardLocked = true;
+                if (aidSequence == sequence) {
+                    responseTimes.cancel(sequence);
+                    keyboardLocked = false;
+                }
             } finally {
-                lock.unlock();
+                unlockAndPublish();
             }
-        } catch (IOException e) {
             throw new RuntimeException("Failed to send AID key: " + aid, e);
         }
     }
     
+    private boolean queueTypeAhead(Runnable action) {
+        if (!typeAhead.isEnabled()) {
+            return false;
+        }
+        lock.lock();
+        try {
+            if (!typeAhead.shouldQueue(keyboardLocked)) {
+                return false;
+            }
+            typeAhead.offer(action);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
     private int normalizePosition(int position) {
         if (position < 0) return 0;
         if (position >= bufferSize) return bufferSize - 1;
@@ -651,92 +1064,330 @@ public class Screen {
     }
     
     private Field getFieldAt(int position) {
-        return fields[normalizePosition(position)];
+        return fields().fieldAt(normalizePosition(position));
     }
     
     private Field getFieldByNumber(int number) {
-        List<Field> fieldList = getFields();
-        if (number >= 0 && number < fieldList.size()) {
-            return fieldList.get(number);
-        }
-        return null;
+        return fields().get(number);
     }
     
     private Field getNextUnprotectedField(int position) {
-        int start = position;
-        do {
-            position = (position + 1) % bufferSize;
-            Field field = fields[position];
-            if (field != null && !field.isProtected() && position == field.getStart()) {
-                return field;
-            }
-        } while (position != start);
-        return null;
+        return fields().nextUnprotected(position);
     }
     
     private Field getPreviousUnprotectedField(int position) {
-        int start = position;
-        do {
-            position = (position - 1 + bufferSize) % bufferSize;
-            Field field = fields[position];
-            if (field != null && !field.isProtected() && position == field.getStart()) {
-                return field;
-            }
-        } while (position != start);
-        return null;
+        return fields().previousUnprotected(position);
     }
     
     private Field getFirstUnprotectedField() {
-        for (int i = 0; i < bufferSize; i++) {
-            Field field = fields[i];
-            if (field != null && !field.isProtected() && i == field.getStart()) {
-                return field;
+        return fields().firstUnprotected();
+    }
+    
+    private void unlockAndPublish() {
+        try {
+            publishSnapshot();
+        } finally {
+            lock.unlock();
+        }
+        notifyWaiters();
+    }
+    
+    private void notifyWaiters() {
+        if (waiters.isEmpty() || lock.isHeldByCurrentThread() || Thread.holdsLock(builder)) {
+            return;
+        }
+        ScreenSnapshot current = snapshot;
+        Executor executor = callbacks();
+        for (Waiter<?> waiter : waiters) {
+            waiter.check(current, executor);
+        }
+    }
+    
+    private void publishSnapshot() {
+        ScreenSnapshot current = snapshot;
+        if (current != null && !snapshotStale && current.getCursorPosition() == cursorPosition
+                && current.isKeyboardLocked() == keyboardLocked) {
+            return;
+        }
+        
+        long version = current == null ? 1 : current.getVersion() + 1;
+        if (current == null || snapshotStale) {
+            FieldIndex fields = fields();
+            int[] fieldData = new int[fields.size() * 3];
+            for (int i = 0; i < fields.size(); i++) {
+                Field field = fields.get(i);
+                fieldData[i * 3] = field.getStart();
+                fieldData[i * 3 + 1] = field.getLength();
+                fieldData[i * 3 + 2] = (field.getAttribute() & 0xFF)
+                        | (fields.isModified(i) ? ScreenSnapshot.FIELD_MODIFIED : 0);
+            }
+            long fingerprint = fingerprintTracker.update(fields, buffer, rows, cols, snapshotRows);
+            snapshot = new ScreenSnapshot(this, version, fingerprint, rows, cols, copyLines(current),
+                    (BitSet) snapshotRows.clone(), fieldData, fields.size(), cursorPosition, keyboardLocked);
+            snapshotStale = false;
+            snapshotRows.clear();
+        } else {
+            snapshot = current.withState(version, cursorPosition, keyboardLocked);
+        }
+    }
+    
+    private char[][] copyLines(ScreenSnapshot previous) {
+        boolean reuse = previous != null && previous.getRows() == rows && previous.getCols() == cols;
+        char[][] lines = new char[rows][];
+        for (int row = 0; row < rows; row++) {
+            if (reuse && !snapshotRows.get(row)) {
+                lines[row] = previous.getRow(row);
+            } else {
+                lines[row] = Arrays.copyOfRange(buffer, row * cols, (row + 1) * cols);
             }
         }
-        return null;
+        return lines;
+    }
+    
+    private void markModified(int position) {
+        FieldIndex fields = fields();
+        int id = fields.idAt(position);
+        if (id >= 0) {
+            fields.setModified(id, true);
+        }
     }
     
-    private boolean containsText(String text) {
-        String screenText = new String(buffer);
-        return screenText.contains(text);
+    void eraseAll() {
+        Arrays.fill(buffer, ' ');
+        Arrays.fill(attributes, (byte) 0);
+        Arrays.fill(highlights, (byte) 0);
+        Arrays.fill(colors, (byte) 0);
+        Arrays.fill(fieldAttributeMarks, false);
+        dirtyRows.set(0, rows);
+        snapshotRows.set(0, rows);
+        snapshotStale = true;
+        fieldIndex.clear(bufferSize);
+        fieldIndexStale = false;
+        rewrittenAttributes.clear();
+    }
+    
+    void setTerminalType(TerminalType terminalType) {
+        lock.lock();
+        try {
+            configure(DEFAULT_ROWS, DEFAULT_COLS, terminalType.getRows(), terminalType.getCols());
+        } finally {
+            unlockAndPublish();
+        }
+    }
+    
+    void connectionReset() {
+        lock.lock();
+        try {
+            typeAhead.clear();
+            responseTimes.cancel(aidSequence);
+            keyboardLocked = false;
+            setAlternateSize(false);
+            eraseAll();
+            cursorPosition = 0;
+        } finally {
+            unlockAndPublish();
+        }
+    }
+    
+    void setAlternateSize(boolean alternate) {
+        alternateSize = alternate;
+        rows = alternate ? alternateRows : defaultRows;
+        cols = alternate ? alternateCols : defaultCols;
+        bufferSize = rows * cols;
+        cursorPosition = normalizePosition(cursorPosition);
+    }
+    
+    private void configure(int defaultRows, int defaultCols, int alternateRows, int alternateCols) {
+        if (defaultRows <= 0 || defaultCols <= 0 || alternateRows <= 0 || alternateCols <= 0) {
+            throw new IllegalArgumentException("Screen dimensions must be positive");
+        }
+        
+        this.defaultRows = defaultRows;
+        this.defaultCols = defaultCols;
+        this.alternateRows = alternateRows;
+        this.alternateCols = alternateCols;
+        
+        int capacity = Math.max(defaultRows * defaultCols, alternateRows * alternateCols);
+        if (buffer == null || buffer.length < capacity) {
+            buffer = new char[capacity];
+            attributes = new byte[capacity];
+            highlights = new byte[capacity];
+            colors = new byte[capacity];
+            fieldAttributeMarks = new boolean[capacity];
+        }
+        
+        setAlternateSize(false);
+        eraseAll();
+        cursorPosition = 0;
+    }
+    
+    FieldIndex fields() {
+        if (fieldIndexStale) {
+            fieldIndex.rebuild(fieldAttributeMarks, attributes, rewrittenAttributes, bufferSize);
+            fieldIndexStale = false;
+            rewrittenAttributes.clear();
+        }
+        return fieldIndex;
+    }
+    
+    char[] getBufferArray() {
+        return buffer;
+    }
+    
+    byte[] getAttributeArray() {
+        return attributes;
+    }
+    
+    byte[] getHighlightArray() {
+        return highlights;
+    }
+    
+    byte[] getColorArray() {
+        return colors;
+    }
+    
+    boolean[] getFieldAttributeMarks() {
+        return fieldAttributeMarks;
     }
     
     void setBuffer(int position, char ch) {
-        buffer[normalizePosition(position)] = ch;
+        position = normalizePosition(position);
+        buffer[position] = ch;
+        markDirty(position);
     }
     
-    void setAttribute(int position, byte attr) {
-        attributes[normalizePosition(position)] = attr;
+    void markDirty(int position) {
+        dirtyRows.set(position / cols);
+        snapshotRows.set(position / cols);
+        snapshotStale = true;
     }
     
-    byte getAttribute(int position) {
-        return attributes[normalizePosition(position)];
+    void markDirty(int start, int end) {
+        if (end > bufferSize) {
+            markDirty(0, end - bufferSize);
+            end = bufferSize;
+        }
+        if (end > start) {
+            dirtyRows.set(start / cols, (end - 1) / cols + 1);
+            snapshotRows.set(start / cols, (end - 1) / cols + 1);
+            snapshotStale = true;
+        }
+    }
+    
+    void eraseRange(int start, int end) {
+        if (start >= bufferSize) {
+            start -= bufferSize;
+            end -= bufferSize;
+        }
+        if (end > bufferSize) {
+            Arrays.fill(buffer, start, bufferSize, ' ');
+            Arrays.fill(buffer, 0, end - bufferSize, ' ');
+        } else if (end > start) {
+            Arrays.fill(buffer, start, end, ' ');
+        }
+        markDirty(start, end);
     }
     
-    void setField(int position, Field field) {
-        fields[normalizePosition(position)] = field;
+    void setFieldAttribute(int position, byte attr) {
+        setFieldAttribute(position, attr, (byte) 0, (byte) 0);
+    }
+    
+    void setFieldAttribute(int position, byte attr, byte highlight, byte color) {
+        position = normalizePosition(position);
+        attributes[position] = attr;
+        highlights[position] = highlight;
+        colors[position] = color;
+        fieldAttributeMarks[position] = true;
+        rewrittenAttributes.set(position);
+        buffer[position] = ' ';
+        markDirty(position);
+        fieldIndexStale = true;
     }
     
     void setKeyboardLocked(boolean locked) {
+        if (keyboardLocked && !locked) {
+            responseTimes.restored(System.nanoTime());
+        }
         this.keyboardLocked = locked;
+        if (!locked) {
+            aid = AIDKey.NO_AID;
+        }
     }
     
-    void setCursorPositionInternal(int position) {
-        this.cursorPosition = normalizePosition(position);
+    void bytesReceived(long nanos) {
+        responseTimes.firstByte(nanos);
     }
     
-    int getRows() {
-        return rows;
+    AIDKey getAid() {
+        return aid;
     }
     
-    int getCols() {
-        return cols;
+    void sendResponse(ByteBuffer record) {
+        if (tn3270 == null) {
+            return;
+        }
+        try {
+            tn3270.sendRecord(record);
+        } catch (IOException e) {
+            logger.warning("Failed to answer read command: " + e.getMessage());
+        }
+    }
+    
+    void setCursorPositionInternal(int position) {
+        this.cursorPosition = normalizePosition(position);
+    }
+    
+    ReentrantLock getLock() {
+        return lock;
     }
     
     int getBufferSize() {
         return bufferSize;
     }
     
+    private static class Waiter<T> {
+        private final Function<ScreenSnapshot, T> evaluator;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private volatile ScheduledFuture<?> timeoutTask;
+        private long checkedVersion;
+        private boolean settled;
+        
+        Waiter(Function<ScreenSnapshot, T> evaluator) {
+            this.evaluator = evaluator;
+        }
+        
+        synchronized void check(ScreenSnapshot current, Executor executor) {
+            if (settled || future.isDone() || current.getVersion() == checkedVersion) {
+                return;
+            }
+            checkedVersion = current.getVersion();
+            try {
+                T result = evaluator.apply(current);
+                if (result != null) {
+                    settle(() -> future.complete(result), executor);
+                }
+            } catch (RuntimeException e) {
+                settle(() -> future.completeExceptionally(e), executor);
+            }
+        }
+        
+        synchronized void fail(Throwable error, Executor executor) {
+            if (!settled && !future.isDone()) {
+                settle(() -> future.completeExceptionally(error), executor);
+            }
+        }
+        
+        private void settle(Runnable completion, Executor executor) {
+            settled = true;
+            try {
+                executor.execute(completion);
+            } catch (RejectedExecutionException e) {
+                logger.warning("Screen callback rejected by executor: " + e.getMessage());
+                completion.run();
+            }
+        }
+    }
+    
     private class UIKeyListener implements ScreenUI.KeyListener {
         @Override
         public void keyPressed(ScreenUI.KeyEvent event) {
@@ -832,7 +1483,7 @@ public class Screen {
                     sysReq();
                     break;
             }
-            updateAllUIs();
+            requestUIUpdate();
         }
         
         @Override
@@ -841,9 +1492,9 @@ public class Screen {
         
         @Override
         public void keyTyped(ScreenUI.KeyEvent event) {
-            if (!keyboardLocked && event.getKeyChar() != 0) {
+            if ((!keyboardLocked || typeAhead.isEnabled()) && event.getKeyChar() != 0) {
                 putString(String.valueOf(event.getKeyChar()));
-                updateAllUIs();
+                requestUIUpdate();
             }
         }
     }
@@ -0,0 +1,30 @@
+package com.tn3270;
+
+public interface ScreenCondition {
+    boolean test(ScreenSnapshot snapshot);
+    
+    static ScreenCondition keyboardUnlocked() {
+        return snapshot -> !snapshot.isKeyboardLocked();
+    }
+    
+    static ScreenCondition containsText(String text) {
+        return matches(ScreenPattern.text(text));
+    }
+    
+    static ScreenCondition matches(ScreenPattern... patterns) {
+        ScreenMatcher matcher = ScreenMatcher.compile(patterns);
+        return snapshot -> matcher.match(snapshot) != null;
+    }
+    
+    static ScreenCondition fingerprint(long fingerprint) {
+        return snapshot -> snapshot.getFingerprint() == fingerprint;
+    }
+    
+    default ScreenCondition and(ScreenCondition other) {
+        return snapshot -> test(snapshot) && other.test(snapshot);
+    }
+    
+    default ScreenCondition or(ScreenCondition other) {
+        return snapshot -> test(snapshot) || other.test(snapshot);
+    }
+}
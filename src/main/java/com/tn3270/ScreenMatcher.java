@@ -0,0 +1,304 @@
+package com.tn3270;
+
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class ScreenMatcher {
+    private static final int DIRECT_CHARS = 256;
+    
+    private final ScreenPattern[] patterns;
+    private final BitSet literalPatterns = new BitSet();
+    private final int[] literalLengths;
+    private final int maxLiteralLength;
+    
+    private final int[] charClasses = new int[DIRECT_CHARS];
+    private final Map<Character, Integer> extendedClasses = new HashMap<>();
+    private final int classCount;
+    private final int[][] transitions;
+    private final int[][] outputs;
+    
+    private Object owner;
+    private long version;
+    private int rows;
+    private int cols;
+    private BitSet[] rowHits;
+    private int[] hitCounts;
+    
+    private ScreenMatcher(ScreenPattern[] patterns) {
+        if (patterns.length == 0) {
+            throw new IllegalArgumentException("At least one pattern is required");
+        }
+        this.patterns = patterns;
+        this.literalLengths = new int[patterns.length];
+        
+        int classes = 1;
+        int longest = 0;
+        for (int i = 0; i < patterns.length; i++) {
+            String text = patterns[i].getText();
+            if (text == null) {
+                continue;
+            }
+            literalPatterns.set(i);
+            literalLengths[i] = text.length();
+            longest = Math.max(longest, text.length());
+            for (int j = 0; j < text.length(); j++) {
+                char ch = text.charAt(j);
+                if (ch < DIRECT_CHARS) {
+                    if (charClasses[ch] == 0) {
+                        charClasses[ch] = classes++;
+                    }
+                } else if (!extendedClasses.containsKey(ch)) {
+                    extendedClasses.put(ch, classes++);
+                }
+            }
+        }
+        this.maxLiteralLength = longest;
+        this.classCount = classes;
+        
+        List<int[]> gotos = new ArrayList<>();
+        List<int[]> outs = new ArrayList<>();
+        gotos.add(newState());
+        outs.add(null);
+        for (int i = literalPatterns.nextSetBit(0); i >= 0; i = literalPatterns.nextSetBit(i + 1)) {
+            String text = patterns[i].getText();
+            int state = 0;
+            for (int j = 0; j < text.length(); j++) {
+                int charClass = classOf(text.charAt(j));
+                int next = gotos.get(state)[charClass];
+                if (next <= 0) {
+                    next = gotos.size();
+                    gotos.get(state)[charClass] = next;
+                    gotos.add(newState());
+                    outs.add(null);
+                }
+                state = next;
+            }
+            outs.set(state, append(outs.get(state), i));
+        }
+        
+        this.transitions = gotos.toArray(new int[gotos.size()][]);
+        this.outputs = outs.toArray(new int[outs.size()][]);
+        buildFailureLinks();
+    }
+    
+    public static ScreenMatcher compile(ScreenPattern... patterns) {
+        return new ScreenMatcher(patterns.clone());
+    }
+    
+    public static ScreenMatcher compile(List<ScreenPattern> patterns) {
+        return new ScreenMatcher(patterns.toArray(new ScreenPattern[patterns.size()]));
+    }
+    
+    public List<ScreenPattern> getPatterns() {
+        return Collections.unmodifiableList(Arrays.asList(patterns));
+    }
+    
+    public synchronized ScreenPattern match(ScreenSnapshot snapshot) {
+        update(snapshot);
+        for (int i = 0; i < patterns.length; i++) {
+            if (hitCounts[i] > 0) {
+                return patterns[i];
+            }
+        }
+        return null;
+    }
+    
+    public synchronized List<ScreenPattern> matchAll(ScreenSnapshot snapshot) {
+        update(snapshot);
+        List<ScreenPattern> matched = new ArrayList<>();
+        for (int i = 0; i < patterns.length; i++) {
+            if (hitCounts[i] > 0) {
+                matched.add(patterns[i]);
+            }
+        }
+        return matched;
+    }
+    
+    private void update(ScreenSnapshot snapshot) {
+        BitSet dirty;
+        if (snapshot.getOwner() != owner || snapshot.getRows() != rows || snapshot.getCols() != cols
+                || rowHits == null) {
+            reset(snapshot);
+            dirty = new BitSet();
+            dirty.set(0, rows);
+        } else if (snapshot.getVersion() == version) {
+            return;
+        } else if (snapshot.getVersion() == version + 1) {
+            dirty = snapshot.getChangedRows();
+        } else {
+            dirty = new BitSet();
+            dirty.set(0, rows);
+        }
+        version = snapshot.getVersion();
+        
+        if (dirty == null || dirty.isEmpty()) {
+            return;
+        }
+        if (!literalPatterns.isEmpty()) {
+            scanLiterals(snapshot, dirty);
+        }
+        if (literalPatterns.cardinality() < patterns.length) {
+            scanRegexes(snapshot, dirty);
+        }
+    }
+    
+    private void reset(ScreenSnapshot snapshot) {
+        owner = snapshot.getOwner();
+        rows = snapshot.getRows();
+        cols = snapshot.getCols();
+        rowHits = new BitSet[rows];
+        for (int row = 0; row < rows; row++) {
+            rowHits[row] = new BitSet(patterns.length);
+        }
+        hitCounts = new int[patterns.length];
+    }
+    
+    private void scanLiterals(ScreenSnapshot snapshot, BitSet dirty) {
+        int overlapRows = (maxLiteralLength - 1 + cols - 1) / cols;
+        BitSet expanded = new BitSet(rows);
+        for (int row = dirty.nextSetBit(0); row >= 0 && row < rows; row = dirty.nextSetBit(row + 1)) {
+            expanded.set(Math.max(0, row - overlapRows), row + 1);
+        }
+        
+        int size = rows * cols;
+        for (int first = expanded.nextSetBit(0); first >= 0; ) {
+            int last = expanded.nextClearBit(first);
+            for (int row = first; row < last; row++) {
+                clearHits(row, true);
+            }
+            
+            int start = first * cols;
+            int limit = last * cols;
+            int end = Math.min(size, limit + maxLiteralLength - 1);
+            int state = 0;
+            for (int position = start; position < end; ) {
+                char[] line = snapshot.getRow(position / cols);
+                for (int col = position % cols; col < cols && position < end; col++, position++) {
+                    state = transitions[state][classOf(line[col])];
+                    int[] matched = outputs[state];
+                    if (matched == null) {
+                        continue;
+                    }
+                    for (int id : matched) {
+                        int matchStart = position - literalLengths[id] + 1;
+                        if (matchStart >= start && matchStart < limit && inScope(patterns[id], matchStart, position)) {
+                            recordHit(matchStart / cols, id);
+                        }
+                    }
+                }
+            }
+            first = last < rows ? expanded.nextSetBit(last) : -1;
+        }
+    }
+    
+    private void scanRegexes(ScreenSnapshot snapshot, BitSet dirty) {
+        for (int row = dirty.nextSetBit(0); row >= 0 && row < rows; row = dirty.nextSetBit(row + 1)) {
+            clearHits(row, false);
+            for (int id = 0; id < patterns.length; id++) {
+                ScreenPattern pattern = patterns[id];
+                if (literalPatterns.get(id) || row < pattern.getFirstRow() || row > pattern.getLastRow()
+                        || pattern.getFirstCol() >= cols) {
+                    continue;
+                }
+                int firstCol = pattern.getFirstCol();
+                int lastCol = Math.min(pattern.getLastCol(), cols - 1);
+                CharBuffer text = CharBuffer.wrap(snapshot.getRow(row), firstCol, lastCol - firstCol + 1);
+                if (pattern.getRegex().matcher(text).find()) {
+                    recordHit(row, id);
+                }
+            }
+        }
+    }
+    
+    private boolean inScope(ScreenPattern pattern, int start, int end) {
+        if (pattern.isAnywhere()) {
+            return true;
+        }
+        int row = start / cols;
+        int col = start % cols;
+        return row >= pattern.getFirstRow() && row <= pattern.getLastRow() && end / cols == row
+                && col >= pattern.getFirstCol() && end % cols <= pattern.getLastCol();
+    }
+    
+    private void clearHits(int row, boolean literals) {
+        BitSet hits = rowHits[row];
+        for (int id = hits.nextSetBit(0); id >= 0; id = hits.nextSetBit(id + 1)) {
+            if (literalPatterns.get(id) == literals) {
+                hits.clear(id);
+                hitCounts[id]--;
+            }
+        }
+    }
+    
+    private void recordHit(int row, int id) {
+        BitSet hits = rowHits[row];
+        if (!hits.get(id)) {
+            hits.set(id);
+            hitCounts[id]++;
+        }
+    }
+    
+    private int classOf(char ch) {
+        if (ch < DIRECT_CHARS) {
+            return charClasses[ch];
+        }
+        Integer charClass = extendedClasses.get(ch);
+        return charClass != null ? charClass : 0;
+    }
+    
+    private int[] newState() {
+        int[] state = new int[classCount];
+        Arrays.fill(state, -1);
+        return state;
+    }
+    
+    private void buildFailureLinks() {
+        int[] failure = new int[transitions.length];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        
+        for (int c = 0; c < classCount; c++) {
+            int next = transitions[0][c];
+            if (next <= 0) {
+                transitions[0][c] = 0;
+            } else {
+                failure[next] = 0;
+                queue.add(next);
+            }
+        }
+        
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int[] merged = outputs[failure[state]];
+            if (merged != null) {
+                for (int id : merged) {
+                    outputs[state] = append(outputs[state], id);
+                }
+            }
+            for (int c = 0; c < classCount; c++) {
+                int next = transitions[state][c];
+                if (next < 0) {
+                    transitions[state][c] = transitions[failure[state]][c];
+                } else {
+                    failure[next] = transitions[failure[state]][c];
+                    queue.add(next);
+                }
+            }
+        }
+    }
+    
+    private static int[] append(int[] values, int value) {
+        if (values == null) {
+            return new int[]{value};
+        }
+        int[] larger = Arrays.copyOf(values, values.length + 1);
+        larger[values.length] = value;
+        return larger;
+    }
+}
@@ -0,0 +1,100 @@
+package com.tn3270;
+
+import java.util.regex.Pattern;
+
+public final class ScreenPattern {
+    static final int ANYWHERE = -1;
+    
+    private final String text;
+    private final Pattern regex;
+    private final int firstRow;
+    private final int lastRow;
+    private final int firstCol;
+    private final int lastCol;
+    
+    private ScreenPattern(String text, Pattern regex, int firstRow, int lastRow, int firstCol, int lastCol) {
+        if (text != null && text.isEmpty()) {
+            throw new IllegalArgumentException("Pattern text must not be empty");
+        }
+        if (firstRow != ANYWHERE && (firstRow < 0 || lastRow < firstRow || firstCol < 0 || lastCol < firstCol)) {
+            throw new IllegalArgumentException("Invalid pattern region");
+        }
+        this.text = text;
+        this.regex = regex;
+        this.firstRow = firstRow;
+        this.lastRow = lastRow;
+        this.firstCol = firstCol;
+        this.lastCol = lastCol;
+    }
+    
+    public static ScreenPattern text(String text) {
+        return new ScreenPattern(text, null, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE);
+    }
+    
+    public static ScreenPattern textInRow(String text, int row) {
+        return new ScreenPattern(text, null, row, row, 0, Integer.MAX_VALUE);
+    }
+    
+    public static ScreenPattern textInRegion(String text, int row, int col, int height, int width) {
+        return new ScreenPattern(text, null, row, row + height - 1, col, col + width - 1);
+    }
+    
+    // Regex patterns are matched against each row separately, so a match can never span a row boundary.
+    public static ScreenPattern regex(String regex) {
+        return regex(Pattern.compile(regex));
+    }
+    
+    public static ScreenPattern regex(Pattern regex) {
+        return new ScreenPattern(null, regex, 0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE);
+    }
+    
+    public static ScreenPattern regexInRow(String regex, int row) {
+        return new ScreenPattern(null, Pattern.compile(regex), row, row, 0, Integer.MAX_VALUE);
+    }
+    
+    public static ScreenPattern regexInRegion(String regex, int row, int col, int height, int width) {
+        return new ScreenPattern(null, Pattern.compile(regex), row, row + height - 1, col, col + width - 1);
+    }
+    
+    public boolean isRegex() {
+        return regex != null;
+    }
+    
+    public String getText() {
+        return text;
+    }
+    
+    public Pattern getRegex() {
+        return regex;
+    }
+    
+    boolean isAnywhere() {
+        return firstRow == ANYWHERE;
+    }
+    
+    int getFirstRow() {
+        return firstRow;
+    }
+    
+    int getLastRow() {
+        return lastRow;
+    }
+    
+    int getFirstCol() {
+        return firstCol;
+    }
+    
+    int getLastCol() {
+        return lastCol;
+    }
+    
+    @Override
+    public String toString() {
+        String body = regex != null ? "regex=" + regex.pattern() : "text=" + text;
+        if (isAnywhere() || (regex != null && firstRow == 0 && lastRow == Integer.MAX_VALUE)) {
+            return "ScreenPattern[" + body + "]";
+        }
+        return String.format("ScreenPattern[%s, rows=%d-%d, cols=%d-%s]", body, firstRow, lastRow, firstCol,
+                lastCol == Integer.MAX_VALUE ? "end" : String.valueOf(lastCol));
+    }
+}
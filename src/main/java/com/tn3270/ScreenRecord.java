@@ -0,0 +1,196 @@
+package com.tn3270;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+public class ScreenRecord {
+    private static final int MISSING = -1;
+    
+    private final ScreenTemplate template;
+    private char[] chars = new char[256];
+    private int[] starts = new int[0];
+    private int[] lengths = new int[0];
+    private long[] numbers = new long[0];
+    private boolean[] numeric = new boolean[0];
+    private int[] scales = new int[0];
+    private int count;
+    private int used;
+    private long version;
+    private long fingerprint;
+    
+    ScreenRecord(ScreenTemplate template) {
+        this.template = template;
+    }
+    
+    public ScreenTemplate getTemplate() {
+        return template;
+    }
+    
+    public int size() {
+        return count;
+    }
+    
+    public long getVersion() {
+        return version;
+    }
+    
+    public long getFingerprint() {
+        return fingerprint;
+    }
+    
+    public boolean isPresent(int index) {
+        return lengths[checkIndex(index)] != MISSING;
+    }
+    
+    public int length(int index) {
+        return Math.max(0, lengths[checkIndex(index)]);
+    }
+    
+    public char charAt(int index, int position) {
+        if (position < 0 || position >= length(index)) {
+            throw new IndexOutOfBoundsException("Position " + position + " outside entry " + index);
+        }
+        return chars[starts[index] + position];
+    }
+    
+    public boolean contentEquals(int index, CharSequence text) {
+        int length = length(index);
+        if (text.length() != length) {
+            return false;
+        }
+        for (int i = 0, start = starts[index]; i < length; i++) {
+            if (chars[start + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    public String getString(int index) {
+        return isPresent(index) ? new String(chars, starts[index], lengths[index]) : null;
+    }
+    
+    public String getString(String name) {
+        return getString(template.indexOf(name));
+    }
+    
+    public boolean isNumber(int index) {
+        return numeric[checkIndex(index)];
+    }
+    
+    public long getLong(int index) {
+        if (!isNumber(index)) {
+            throw new NumberFormatException("Entry " + template.getName(index) + " is not a valid number");
+        }
+        return numbers[index];
+    }
+    
+    public long getLong(String name) {
+        return getLong(template.indexOf(name));
+    }
+    
+    public BigDecimal getDecimal(int index) {
+        long unscaled = getLong(index);
+        return BigDecimal.valueOf(unscaled, scales[index]);
+    }
+    
+    public BigDecimal getDecimal(String name) {
+        return getDecimal(template.indexOf(name));
+    }
+    
+    void begin(int count, long version, long fingerprint) {
+        if (starts.length < count) {
+            starts = new int[count];
+            lengths = new int[count];
+            numbers = new long[count];
+            numeric = new boolean[count];
+            scales = new int[count];
+        }
+        this.count = count;
+        this.used = 0;
+        this.version = version;
+        this.fingerprint = fingerprint;
+    }
+    
+    void setMissing(int index) {
+        starts[index] = 0;
+        lengths[index] = MISSING;
+        numeric[index] = false;
+    }
+    
+    void set(int index, char[] source, int start, int length, int scale) {
+        if (used + length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, used + length));
+        }
+        System.arraycopy(source, start, chars, used, length);
+        starts[index] = used;
+        lengths[index] = length;
+        scales[index] = scale;
+        used += length;
+        numeric[index] = scale != ScreenTemplate.NOT_NUMERIC && parse(index, scale);
+    }
+    
+    private boolean parse(int index, int scale) {
+        int position = starts[index];
+        int end = position + lengths[index];
+        while (position < end && chars[position] == ' ') {
+            position++;
+        }
+        while (end > position && chars[end - 1] == ' ') {
+            end--;
+        }
+        
+        boolean negative = false;
+        if (position < end && (chars[position] == '-' || chars[position] == '+')) {
+            negative = chars[position++] == '-';
+        } else if (end > position && chars[end - 1] == '-') {
+            negative = true;
+            end--;
+        }
+        
+        long value = 0;
+        int digits = 0;
+        int fraction = -1;
+        for (; position < end; position++) {
+            char ch = chars[position];
+            if (ch >= '0' && ch <= '9') {
+                if (fraction >= 0) {
+                    if (fraction == scale) {
+                        if (ch != '0') {
+                            return false;
+                        }
+                        continue;
+                    }
+                    fraction++;
+                }
+                if (value > (Long.MAX_VALUE - 9) / 10) {
+                    return false;
+                }
+                value = value * 10 + (ch - '0');
+                digits++;
+            } else if (ch == '.' && fraction < 0) {
+                fraction = 0;
+            } else if (ch != ',') {
+                return false;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        for (int i = Math.max(fraction, 0); i < scale; i++) {
+            if (value > Long.MAX_VALUE / 10) {
+                return false;
+            }
+            value *= 10;
+        }
+        numbers[index] = negative ? -value : value;
+        return true;
+    }
+    
+    private int checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("No entry " + index + " in record of size " + count);
+        }
+        return index;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,47 @@
+package com.tn3270;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ScreenRegistry<T> {
+    private final ConcurrentHashMap<Long, T> screens = new ConcurrentHashMap<>();
+    
+    public ScreenRegistry<T> register(long fingerprint, T id) {
+        if (id == null) {
+            throw new IllegalArgumentException("Screen id must not be null");
+        }
+        screens.put(fingerprint, id);
+        return this;
+    }
+    
+    public ScreenRegistry<T> register(ScreenSnapshot snapshot, T id) {
+        return register(snapshot.getFingerprint(), id);
+    }
+    
+    public ScreenRegistry<T> register(Screen screen, T id) {
+        return register(screen.getFingerprint(), id);
+    }
+    
+    public T identify(long fingerprint) {
+        return screens.get(fingerprint);
+    }
+    
+    public T identify(ScreenSnapshot snapshot) {
+        return screens.get(snapshot.getFingerprint());
+    }
+    
+    public T identify(Screen screen) {
+        return screens.get(screen.getFingerprint());
+    }
+    
+    public T remove(long fingerprint) {
+        return screens.remove(fingerprint);
+    }
+    
+    public int size() {
+        return screens.size();
+    }
+    
+    public void clear() {
+        screens.clear();
+    }
+}
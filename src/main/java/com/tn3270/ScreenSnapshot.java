@@ -0,0 +1,190 @@
+package com.tn3270;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+public final class ScreenSnapshot {
+    static final int FIELD_MODIFIED = 0x100;
+    
+    private final Object owner;
+    private final long version;
+    private final long fingerprint;
+    private final int rows;
+    private final int cols;
+    private final char[][] lines;
+    private volatile char[] buffer;
+    private final BitSet changedRows;
+    private final int[] fieldData;
+    private final int fieldCount;
+    private volatile List<Field> fields;
+    private final int cursorPosition;
+    private final boolean keyboardLocked;
+    
+    ScreenSnapshot(Object owner, long version, long fingerprint, int rows, int cols, char[][] lines, BitSet changedRows,
+            int[] fieldData, int fieldCount, int cursorPosition, boolean keyboardLocked) {
+        this.owner = owner;
+        this.version = version;
+        this.fingerprint = fingerprint;
+        this.rows = rows;
+        this.cols = cols;
+        this.lines = lines;
+        this.changedRows = changedRows;
+        this.fieldData = fieldData;
+        this.fieldCount = fieldCount;
+        this.cursorPosition = cursorPosition;
+        this.keyboardLocked = keyboardLocked;
+    }
+    
+    ScreenSnapshot withState(long version, int cursorPosition, boolean keyboardLocked) {
+        ScreenSnapshot next = new ScreenSnapshot(owner, version, fingerprint, rows, cols, lines, null, fieldData,
+                fieldCount, cursorPosition, keyboardLocked);
+        next.buffer = buffer;
+        return next;
+    }
+    
+    Object getOwner() {
+        return owner;
+    }
+    
+    char[] getRow(int row) {
+        return lines[row];
+    }
+    
+    char[] getBuffer() {
+        char[] flat = buffer;
+        if (flat == null) {
+            flat = new char[rows * cols];
+            for (int row = 0; row < rows; row++) {
+                System.arraycopy(lines[row], 0, flat, row * cols, cols);
+            }
+            buffer = flat;
+        }
+        return flat;
+    }
+    
+    void getChars(int position, int length, char[] target, int offset) {
+        int size = rows * cols;
+        while (length > 0) {
+            int wrapped = position % size;
+            int row = wrapped / cols;
+            int col = wrapped - row * cols;
+            int count = Math.min(length, cols - col);
+            System.arraycopy(lines[row], col, target, offset, count);
+            position += count;
+            offset += count;
+            length -= count;
+        }
+    }
+    
+    BitSet getChangedRows() {
+        return changedRows;
+    }
+    
+    int getFieldStart(int fieldNumber) {
+        return fieldData[fieldNumber * 3];
+    }
+    
+    int getFieldLength(int fieldNumber) {
+        return fieldData[fieldNumber * 3 + 1];
+    }
+    
+    public long getVersion() {
+        return version;
+    }
+    
+    public long getFingerprint() {
+        return fingerprint;
+    }
+    
+    public int getRows() {
+        return rows;
+    }
+    
+    public int getCols() {
+        return cols;
+    }
+    
+    public int getCursorPosition() {
+        return cursorPosition;
+    }
+    
+    public int getCursorRow() {
+        return cursorPosition / cols;
+    }
+    
+    public int getCursorCol() {
+        return cursorPosition % cols;
+    }
+    
+    public boolean isKeyboardLocked() {
+        return keyboardLocked;
+    }
+    
+    public char charAt(int position) {
+        return lines[position / cols][position % cols];
+    }
+    
+    public String getText() {
+        return new String(getBuffer());
+    }
+    
+    public String getLine(int row) {
+        return new String(lines[row]);
+    }
+    
+    public String[] getLines() {
+        String[] text = new String[rows];
+        for (int row = 0; row < rows; row++) {
+            text[row] = new String(lines[row]);
+        }
+        return text;
+    }
+    
+    public String getString(int position, int length) {
+        int size = rows * cols;
+        position = Math.max(0, Math.min(position, size - 1));
+        char[] chars = new char[Math.max(0, Math.min(length, size - position))];
+        getChars(position, chars.length, chars, 0);
+        return new String(chars);
+    }
+    
+    public int getFieldCount() {
+        return fieldCount;
+    }
+    
+    public List<Field> getFields() {
+        List<Field> list = fields;
+        if (list == null) {
+            list = new ArrayList<>(fieldCount);
+            for (int i = 0; i < fieldCount; i++) {
+                int data = fieldData[i * 3 + 2];
+                list.add(new Field(fieldData[i * 3], fieldData[i * 3 + 1], (byte) data, rows * cols,
+                        (data & FIELD_MODIFIED) != 0));
+            }
+            list = Collections.unmodifiableList(list);
+            fields = list;
+        }
+        return list;
+    }
+    
+    public String getFieldString(int fieldNumber) {
+        if (fieldNumber < 0 || fieldNumber >= fieldCount) {
+            return "";
+        }
+        char[] chars = new char[fieldData[fieldNumber * 3 + 1]];
+        getChars(fieldData[fieldNumber * 3], chars.length, chars, 0);
+        return new String(chars).trim();
+    }
+    
+    public boolean containsText(String text) {
+        return getText().contains(text);
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("ScreenSnapshot[version=%d, rows=%d, cols=%d, cursor=%d, locked=%b]",
+                version, rows, cols, cursorPosition, keyboardLocked);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,223 @@
+package com.tn3270;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ScreenTemplate {
+    static final int NOT_NUMERIC = -1;
+    
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private boolean trim = true;
+    private volatile Layout layout;
+    
+    public synchronized ScreenTemplate region(String name, int row, int col, int length) {
+        return add(new Entry(name, row, col, length, -1, NOT_NUMERIC));
+    }
+    
+    public synchronized ScreenTemplate field(String name, int fieldNumber) {
+        return add(new Entry(name, -1, -1, -1, fieldNumber, NOT_NUMERIC));
+    }
+    
+    public synchronized ScreenTemplate numericRegion(String name, int row, int col, int length, int scale) {
+        return add(new Entry(name, row, col, length, -1, checkScale(scale)));
+    }
+    
+    public synchronized ScreenTemplate numericField(String name, int fieldNumber, int scale) {
+        return add(new Entry(name, -1, -1, -1, fieldNumber, checkScale(scale)));
+    }
+    
+    public synchronized ScreenTemplate setTrim(boolean trim) {
+        this.trim = trim;
+        this.layout = null;
+        return this;
+    }
+    
+    public boolean isTrim() {
+        return trim;
+    }
+    
+    public synchronized int size() {
+        return entries.size();
+    }
+    
+    public synchronized int indexOf(String name) {
+        Integer index = indexes.get(name);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown template entry: " + name);
+        }
+        return index;
+    }
+    
+    public synchronized String getName(int index) {
+        return entries.get(index).name;
+    }
+    
+    public ScreenRecord newRecord() {
+        return new ScreenRecord(this);
+    }
+    
+    public ScreenRecord apply(Screen screen) {
+        return apply(screen.getSnapshot(), newRecord());
+    }
+    
+    public ScreenRecord apply(Screen screen, ScreenRecord record) {
+        return apply(screen.getSnapshot(), record);
+    }
+    
+    public ScreenRecord apply(ScreenSnapshot snapshot, ScreenRecord record) {
+        if (record.getTemplate() != this) {
+            throw new IllegalArgumentException("Record was created for a different template");
+        }
+        
+        Layout current = compile(snapshot.getRows(), snapshot.getCols());
+        char[] buffer = snapshot.getBuffer();
+        int size = snapshot.getRows() * snapshot.getCols();
+        record.begin(current.count, snapshot.getVersion(), snapshot.getFingerprint());
+        
+        for (int i = 0; i < current.count; i++) {
+            char[] source = buffer;
+            int start;
+            int end;
+            if (current.fieldNumbers[i] >= 0) {
+                int fieldNumber = current.fieldNumbers[i];
+                if (fieldNumber >= snapshot.getFieldCount()) {
+                    record.setMissing(i);
+                    continue;
+                }
+                start = snapshot.getFieldStart(fieldNumber);
+                end = start + snapshot.getFieldLength(fieldNumber);
+                if (end > size) {
+                    source = new char[end - start];
+                    snapshot.getChars(start, source.length, source, 0);
+                    start = 0;
+                    end = source.length;
+                }
+            } else {
+                start = current.offsets[i];
+                end = start + current.lengths[i];
+                if (start < 0 || start >= size) {
+                    record.setMissing(i);
+                    continue;
+                }
+                end = Math.min(end, size);
+            }
+            
+            if (current.trim) {
+                while (start < end && isBlank(source[start])) {
+                    start++;
+                }
+                while (end > start && isBlank(source[end - 1])) {
+                    end--;
+                }
+            }
+            record.set(i, source, start, end - start, current.scales[i]);
+        }
+        return record;
+    }
+    
+    Layout compile(int rows, int cols) {
+        Layout current = layout;
+        if (current != null && current.rows == rows && current.cols == cols) {
+            return current;
+        }
+        
+        synchronized (this) {
+            int count = entries.size();
+            Layout compiled = new Layout(rows, cols, count, trim);
+            for (int i = 0; i < count; i++) {
+                Entry entry = entries.get(i);
+                compiled.fieldNumbers[i] = entry.fieldNumber;
+                compiled.scales[i] = entry.scale;
+                if (entry.fieldNumber < 0) {
+                    boolean inside = entry.row < rows && entry.col < cols;
+                    compiled.offsets[i] = inside ? entry.row * cols + entry.col : -1;
+                    compiled.lengths[i] = entry.length;
+                }
+            }
+            layout = compiled;
+            return compiled;
+        }
+    }
+    
+    private ScreenTemplate add(Entry entry) {
+        if (indexes.containsKey(entry.name)) {
+            throw new IllegalArgumentException("Duplicate template entry: " + entry.name);
+        }
+        indexes.put(entry.name, entries.size());
+        entries.add(entry);
+        layout = null;
+        return this;
+    }
+    
+    private static int checkScale(int scale) {
+        if (scale < 0 || scale > 18) {
+            throw new IllegalArgumentException("Scale must be between 0 and 18");
+        }
+        return scale;
+    }
+    
+    private static boolean isBlank(char ch) {
+        return ch == ' ' || ch == 0;
+    }
+    
+    private static class Entry {
+        private final String name;
+        private final int row;
+        private final int col;
+        private final int length;
+        private final int fieldNumber;
+        private final int scale;
+        
+        Entry(String name, int row, int col, int length, int fieldNumber, int scale) {
+            if (name == null) {
+                throw new IllegalArgumentException("Entry name must not be null");
+            }
+            if (fieldNumber < 0 && (row < 0 || col < 0 || length <= 0)) {
+                throw new IllegalArgumentException("Invalid region for entry: " + name);
+            }
+            this.name = name;
+            this.row = row;
+            this.col = col;
+            this.length = length;
+            this.fieldNumber = fieldNumber;
+            this.scale = scale;
+        }
+    }
+    
+    static class Layout {
+        private final int rows;
+        private final int cols;
+        private final int count;
+        private final boolean trim;
+        private final int[] offsets;
+        private final int[] lengths;
+        private final int[] fieldNumbers;
+        private final int[] scales;
+        
+        Layout(int rows, int cols, int count, boolean trim) {
+            this.rows = rows;
+            this.cols = cols;
+            this.count = count;
+            this.trim = trim;
+            this.offsets = new int[count];
+            this.lengths = new int[count];
+            this.fieldNumbers = new int[count];
+            this.scales = new int[count];
+        }
+        
+        int fieldNumber(int index) {
+            return fieldNumbers[index];
+        }
+        
+        int offset(int index) {
+            return offsets[index];
+        }
+        
+        int length(int index) {
+            return lengths[index];
+        }
+    }
+}
\ No newline at end of file
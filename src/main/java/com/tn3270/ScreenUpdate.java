@@ -0,0 +1,65 @@
+package com.tn3270;
+
+import java.util.List;
+import com.tn3270.ui.ScreenUI;
+
+class ScreenUpdate {
+    private final int rows;
+    private final int cols;
+    private final char[] screen;
+    private final int[] rowRanges;
+    private final char[][] rowContents;
+    private final int rangeCount;
+    private final boolean contentChanged;
+    private final boolean full;
+    private final boolean cursorChanged;
+    private final int cursorRow;
+    private final int cursorCol;
+    private final boolean lockChanged;
+    private final boolean keyboardLocked;
+    
+    ScreenUpdate(int rows, int cols, char[] screen, int[] rowRanges, char[][] rowContents, int rangeCount,
+            boolean contentChanged, boolean full, boolean cursorChanged, int cursorRow, int cursorCol, boolean lockChanged,
+            boolean keyboardLocked) {
+        this.rows = rows;
+        this.cols = cols;
+        this.screen = screen;
+        this.rowRanges = rowRanges;
+        this.rowContents = rowContents;
+        this.rangeCount = rangeCount;
+        this.contentChanged = contentChanged;
+        this.full = full;
+        this.cursorChanged = cursorChanged;
+        this.cursorRow = cursorRow;
+        this.cursorCol = cursorCol;
+        this.lockChanged = lockChanged;
+        this.keyboardLocked = keyboardLocked;
+    }
+    
+    boolean isEmpty() {
+        return !contentChanged && !full && !cursorChanged && !lockChanged;
+    }
+    
+    void deliver(List<ScreenUI> uis) {
+        for (ScreenUI ui : uis) {
+            deliver(ui);
+        }
+    }
+    
+    void deliver(ScreenUI ui) {
+        if (full || (contentChanged && !ui.supportsDeltaUpdates())) {
+            ui.updateScreen(screen, rows, cols);
+        } else {
+            for (int i = 0; i < rangeCount; i++) {
+                ui.updateRows(rowRanges[i * 2], rowRanges[i * 2 + 1], rowContents[i], cols);
+            }
+        }
+        if (full || cursorChanged) {
+            ui.setCursorPosition(cursorRow, cursorCol);
+        }
+        if (full || lockChanged) {
+            ui.setKeyboardLocked(keyboardLocked);
+        }
+        ui.refresh();
+    }
+}
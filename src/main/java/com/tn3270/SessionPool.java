@@ -0,0 +1,350 @@
+package com.tn3270;
+
+import java.io.Closeable;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+public class SessionPool implements Closeable {
+    private static final Logger logger = Logger.getLogger(SessionPool.class.getName());
+    private static final AtomicInteger poolCount = new AtomicInteger();
+    
+    public interface Routine {
+        void run(Tn3270 session) throws Exception;
+    }
+    
+    private final Supplier<Tn3270> factory;
+    private final Set<Tn3270> checkedOut = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger total = new AtomicInteger();
+    private final int id = poolCount.incrementAndGet();
+    
+    private int size = 4;
+    private Routine logon;
+    private Routine reset;
+    private ScreenCondition home = ScreenCondition.keyboardUnlocked();
+    private long homeTimeout = 30000;
+    private long probeTimeout = 5000;
+    private long healthCheckInterval = 60000;
+    private long retryDelay = 5000;
+    
+    private BlockingQueue<Tn3270> idle;
+    private ExecutorService workers;
+    private ScheduledFuture<?> healthCheck;
+    private volatile boolean started;
+    private volatile boolean closed;
+    
+    public SessionPool(Supplier<Tn3270> factory) {
+        if (factory == null) {
+            throw new IllegalArgumentException("Session factory must not be null");
+        }
+        this.factory = factory;
+    }
+    
+    public SessionPool setSize(int size) {
+        checkNotStarted();
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        this.size = size;
+        return this;
+    }
+    
+    public SessionPool setLogon(Routine logon) {
+        checkNotStarted();
+        this.logon = logon;
+        return this;
+    }
+    
+    public SessionPool setReset(Routine reset) {
+        checkNotStarted();
+        this.reset = reset;
+        return this;
+    }
+    
+    public SessionPool setHomeCondition(ScreenCondition home) {
+        checkNotStarted();
+        if (home == null) {
+            throw new IllegalArgumentException("Home condition must not be null");
+        }
+        this.home = home;
+        return this;
+    }
+    
+    public SessionPool setHomeTimeout(long timeout, TimeUnit unit) {
+        checkNotStarted();
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Home timeout must be positive");
+        }
+        this.homeTimeout = Math.max(1, unit.toMillis(timeout));
+        return this;
+    }
+    
+    public SessionPool setProbeTimeout(long timeout, TimeUnit unit) {
+        checkNotStarted();
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Probe timeout must be positive");
+        }
+        this.probeTimeout = Math.max(1, unit.toMillis(timeout));
+        return this;
+    }
+    
+    public SessionPool setHealthCheckInterval(long interval, TimeUnit unit) {
+        checkNotStarted();
+        this.healthCheckInterval = unit.toMillis(interval);
+        return this;
+    }
+    
+    public SessionPool setRetryDelay(long delay, TimeUnit unit) {
+        checkNotStarted();
+        this.retryDelay = unit.toMillis(delay);
+        return this;
+    }
+    
+    public synchronized SessionPool start() {
+        checkNotStarted();
+        if (closed) {
+            throw new IllegalStateException("Pool is closed");
+        }
+        
+        idle = new ArrayBlockingQueue<>(size, true);
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(Math.min(size, 4), task -> {
+            Thread thread = new Thread(task, "TN3270-Pool-" + id + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        started = true;
+        
+        fill();
+        if (healthCheckInterval > 0) {
+            healthCheck = SharedTimer.get().scheduleWithFixedDelay(() -> execute(this::checkIdle),
+                    healthCheckInterval, healthCheckInterval, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+    
+    public Tn3270 checkout(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        checkOpen();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            long remaining = deadline - System.nanoTime();
+            Tn3270 session = idle.poll(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+            if (session == null) {
+                throw new TimeoutException("No session available within " + timeout + " " + unit);
+            }
+            if (closed) {
+                session.disconnect();
+                throw new IllegalStateException("Pool is closed");
+            }
+            if (isHealthy(session)) {
+                checkedOut.add(session);
+                return session;
+            }
+            retire(session);
+        }
+    }
+    
+    public void release(Tn3270 session) {
+        if (!checkedOut.remove(session)) {
+            throw new IllegalArgumentException("Session was not checked out from this pool");
+        }
+        if (closed) {
+            session.disconnect();
+            return;
+        }
+        execute(() -> recycle(session));
+    }
+    
+    public void invalidate(Tn3270 session) {
+        if (!checkedOut.remove(session)) {
+            throw new IllegalArgumentException("Session was not checked out from this pool");
+        }
+        retire(session);
+    }
+    
+    public int getSize() {
+        return size;
+    }
+    
+    public int getIdleCount() {
+        return idle == null ? 0 : idle.size();
+    }
+    
+    public int getActiveCount() {
+        return checkedOut.size();
+    }
+    
+    public int getTotalCount() {
+        return total.get();
+    }
+    
+    public boolean isClosed() {
+        return closed;
+    }
+    
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (healthCheck != null) {
+            healthCheck.cancel(false);
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+        if (idle != null) {
+            Tn3270 session;
+            while ((session = idle.poll()) != null) {
+                session.disconnect();
+            }
+        }
+    }
+    
+    private void fill() {
+        while (!closed) {
+            int current = total.get();
+            if (current >= size) {
+                return;
+            }
+            if (total.compareAndSet(current, current + 1) && !execute(this::create)) {
+                total.decrementAndGet();
+                return;
+            }
+        }
+    }
+    
+    private void create() {
+        if (closed) {
+            total.decrementAndGet();
+            return;
+        }
+        
+        Tn3270 session = null;
+        try {
+            session = factory.get();
+            session.connect();
+            if (logon != null) {
+                logon.run(session);
+            }
+            awaitHome(session);
+            if (!isHealthy(session) || !offer(session)) {
+                session.disconnect();
+                total.decrementAndGet();
+            }
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (session != null) {
+                session.disconnect();
+            }
+            total.decrementAndGet();
+            if (!closed) {
+                logger.warning("Failed to open pooled session: " + e);
+                scheduleRefill(retryDelay);
+            }
+        }
+    }
+    
+    private void recycle(Tn3270 session) {
+        try {
+            if (reset != null && session.isConnected()) {
+                reset.run(session);
+            }
+            awaitHome(session);
+            if (isHealthy(session) && offer(session)) {
+                return;
+            }
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            logger.warning("Failed to reset pooled session: " + e.getMessage());
+        }
+        retire(session);
+    }
+    
+    private void checkIdle() {
+        for (int i = idle.size(); i > 0 && !closed; i--) {
+            Tn3270 session = idle.poll();
+            if (session == null) {
+                return;
+            }
+            try {
+                if (!isHealthy(session) || !offer(session)) {
+                    retire(session);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                retire(session);
+                return;
+            }
+        }
+        fill();
+    }
+    
+    private void awaitHome(Tn3270 session) throws Exception {
+        if (!session.isConnected()) {
+            throw new IllegalStateException("Session is not connected");
+        }
+        session.getScreen().await(home, homeTimeout, TimeUnit.MILLISECONDS).get();
+    }
+    
+    private boolean isHealthy(Tn3270 session) throws InterruptedException {
+        return session.isConnected() && home.test(session.getScreen().getSnapshot())
+                && session.probe(probeTimeout, TimeUnit.MILLISECONDS);
+    }
+    
+    private boolean offer(Tn3270 session) {
+        return !closed && idle.offer(session);
+    }
+    
+    private void retire(Tn3270 session) {
+        session.disconnect();
+        total.decrementAndGet();
+        execute(this::fill);
+    }
+    
+    private void scheduleRefill(long delay) {
+        SharedTimer.get().schedule(() -> execute(this::fill), delay, TimeUnit.MILLISECONDS);
+    }
+    
+    private boolean execute(Runnable task) {
+        if (closed) {
+            return false;
+        }
+        try {
+            workers.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+    
+    private void checkNotStarted() {
+        if (started) {
+            throw new IllegalStateException("Pool is already started");
+        }
+    }
+    
+    private void checkOpen() {
+        if (!started) {
+            throw new IllegalStateException("Pool is not started");
+        }
+        if (closed) {
+            throw new IllegalStateException("Pool is closed");
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,25 @@
+package com.tn3270;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+final class SharedTimer {
+    private static final ScheduledExecutorService executor = create();
+    
+    private SharedTimer() {
+    }
+    
+    static ScheduledExecutorService get() {
+        return executor;
+    }
+    
+    private static ScheduledExecutorService create() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "TN3270-Timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+}
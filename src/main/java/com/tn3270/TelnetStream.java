@@ -1,6 +1,11 @@
 package com.tn3270;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
 public class TelnetStream implements Closeable {
@@ -46,8 +51,28 @@ public class TelnetStream implements Closeable {
     private static final byte TN3270E_REQUEST = 0x07;
     private static final byte TN3270E_SEND = 0x08;
     
+    private static final int READ_CHUNK_SIZE = 16384;
+    
+    static final int DEFAULT_MAX_RECORD_SIZE = 65536;
+    static final int DEFAULT_RECORD_FLUSH_DELAY = 50;
+    
+    private static final int STATE_DATA = 0;
+    private static final int STATE_IAC = 1;
+    private static final int STATE_OPTION = 2;
+    private static final int STATE_SB = 3;
+    private static final int STATE_SB_IAC = 4;
+    
+    interface RecordHandler {
+        void recordReceived(byte[] record);
+    }
+    
+    private static final byte[] EOR_TRAILER = {IAC, EOR};
+    private static final byte[] TIMING_MARK_PROBE = {IAC, DO, TELOPT_TIMING};
+    private static final byte[] NOP_PROBE = {IAC, NOP};
+    
     private final InputStream inputStream;
     private final OutputStream outputStream;
+    private final NioConnection connection;
     private final TerminalType terminalType;
     
     private boolean[] localOptions = new boolean[256];
@@ -56,11 +81,38 @@ public class TelnetStream implements Closeable {
     private boolean binaryMode = false;
     private boolean eorMode = false;
     
-    private final ByteArrayOutputStream dataBuffer = new ByteArrayOutputStream();
+    private final byte[] readChunk = new byte[READ_CHUNK_SIZE];
+    private final ArrayDeque<byte[]> receivedRecords = new ArrayDeque<>();
+    private final RecordAssembler assembler = new RecordAssembler(DEFAULT_MAX_RECORD_SIZE);
+    private int recordFlushDelay = DEFAULT_RECORD_FLUSH_DELAY;
+    private byte[] subBuffer = new byte[64];
+    private int subLength;
+    private int decodeState = STATE_DATA;
+    private byte pendingCommand;
+    private volatile long lastReceiveNanos = System.nanoTime();
+    private volatile long lastRecordNanos = System.nanoTime();
+    private volatile boolean timingMarkPending;
+    private final AtomicReference<CompletableFuture<Void>> timingMarkReply = new AtomicReference<>();
+    
+    private final Object writeLock = new Object();
+    private final ByteBuffer eorTrailer = ByteBuffer.wrap(EOR_TRAILER);
+    private ByteBuffer control = ByteBuffer.allocate(256);
+    private ByteBuffer sendBuffer = ByteBuffer.allocate(4096);
+    private ByteBuffer[] vector = new ByteBuffer[4];
     
     public TelnetStream(InputStream inputStream, OutputStream outputStream, TerminalType terminalType) {
+        this(inputStream, outputStream, null, terminalType);
+    }
+    
+    TelnetStream(NioConnection connection, TerminalType terminalType) {
+        this(null, null, connection, terminalType);
+    }
+    
+    private TelnetStream(InputStream inputStream, OutputStream outputStream, NioConnection connection,
+            TerminalType terminalType) {
         this.inputStream = inputStream;
         this.outputStream = outputStream;
+        this.connection = connection;
         this.terminalType = terminalType;
         initializeNegotiation();
     }
@@ -74,99 +126,328 @@ public class TelnetStream implements Closeable {
             sendDo(TELOPT_SGA);
             sendWont(TELOPT_ECHO);
             sendWont(TELOPT_LINEMODE);
-            outputStream.flush();
+            flushControl();
         } catch (IOException e) {
             logger.warning("Failed to initialize telnet negotiation: " + e.getMessage());
         }
     }
     
     public byte[] receive() throws IOException {
-        dataBuffer.reset();
-        boolean inCommand = false;
-        boolean inSubnegotiation = false;
-        ByteArrayOutputStream subBuffer = new ByteArrayOutputStream();
-        
-        while (true) {
-            int b = inputStream.read();
-            if (b == -1) {
+        while (receivedRecords.isEmpty()) {
+            int count = inputStream.read(readChunk);
+            if (count == -1) {
                 throw new IOException("Connection closed");
             }
-            
-            byte data = (byte) b;
-            
-            if (data == IAC) {
-                int next = inputStream.read();
-                if (next == -1) {
-                    throw new IOException("Connection closed");
+            feed(readChunk, 0, count, receivedRecords::add);
+            if (receivedRecords.isEmpty() && hasPendingRecord() && inputStream.available() == 0) {
+                flushPendingRecord(receivedRecords::add);
+            }
+        }
+        return receivedRecords.poll();
+    }
+    
+    void feed(ByteBuffer data, RecordHandler handler) throws IOException {
+        if (data.hasArray()) {
+            feed(data.array(), data.arrayOffset() + data.position(), data.remaining(), handler);
+            data.position(data.limit());
+            return;
+        }
+        
+        while (data.hasRemaining()) {
+            int count = Math.min(data.remaining(), readChunk.length);
+            data.get(readChunk, 0, count);
+            feed(readChunk, 0, count, handler);
+        }
+    }
+    
+    void feed(byte[] data, int offset, int length, RecordHandler handler) throws IOException {
+        lastReceiveNanos = System.nanoTime();
+        int end = offset + length;
+        int i = offset;
+        
+        while (i < end) {
+            if (decodeState == STATE_DATA) {
+                int runEnd = findDataRunEnd(data, i, end);
+                if (runEnd > i) {
+                    appendData(data, i, runEnd - i, handler);
+                    i = runEnd;
+                    continue;
                 }
                 
-                byte command = (byte) next;
-                
-                if (command == IAC) {
-                    dataBuffer.write(IAC);
-                } else if (command == EOR) {
+                byte b = data[i++];
+                if (b == IAC) {
+                    decodeState = STATE_IAC;
+                } else {
+                    appendData(b, handler);
+                    emitRecord(handler);
+                }
+                continue;
+            }
+            
+            byte b = data[i++];
+            switch (decodeState) {
+                case STATE_IAC:
+                    decodeState = STATE_DATA;
+                    if (b == IAC) {
+                        appendData(IAC, handler);
+                    } else if (b == EOR) {
+                        emitRecord(handler);
+                    } else if (b == GA) {
+                        if (!isEorFraming()) {
+                            emitRecord(handler);
+                        }
+                    } else if (b == SB) {
+                        subLength = 0;
+                        decodeState = STATE_SB;
+                    } else if (b == WILL || b == WONT || b == DO || b == DONT) {
+                        pendingCommand = b;
+                        decodeState = STATE_OPTION;
+                    }
                     break;
-                } else if (command == GA) {
+                    
+                case STATE_OPTION:
+                    decodeState = STATE_DATA;
+                    processOption(pendingCommand, b);
                     break;
-                } else if (command == SB) {
-                    inSubnegotiation = true;
-                    subBuffer.reset();
-                } else if (command == SE) {
-                    if (inSubnegotiation) {
-                        processSubnegotiation(subBuffer.toByteArray());
-                        inSubnegotiation = false;
+                    
+                case STATE_SB:
+                    if (b == IAC) {
+                        decodeState = STATE_SB_IAC;
+                    } else {
+                        appendSub(b);
                     }
-                } else if (command == WILL || command == WONT || command == DO || command == DONT) {
-                    int option = inputStream.read();
-                    if (option == -1) {
-                        throw new IOException("Connection closed");
+                    break;
+                    
+                case STATE_SB_IAC:
+                    if (b == SE) {
+                        decodeState = STATE_DATA;
+                        processSubnegotiation(Arrays.copyOf(subBuffer, subLength));
+                    } else {
+                        if (b == IAC) {
+                            appendSub(IAC);
+                        }
+                        decodeState = STATE_SB;
                     }
-                    processOption(command, (byte) option);
-                } else if (command == NOP) {
-                    continue;
-                }
-            } else if (inSubnegotiation) {
-                subBuffer.write(data);
-            } else {
-                dataBuffer.write(data);
-                
-                if (!eorMode && !binaryMode && data == 0x0A) {
                     break;
-                }
             }
-            
-            if (inputStream.available() == 0 && dataBuffer.size() > 0 && !eorMode) {
-                break;
+        }
+        
+        if (recordFlushDelay == 0 && hasPendingRecord()) {
+            flushPendingRecord(handler);
+        }
+        
+        flushControl();
+    }
+    
+    boolean hasPendingRecord() {
+        return !isEorFraming() && decodeState == STATE_DATA && assembler.hasPending();
+    }
+    
+    void flushPendingRecord(RecordHandler handler) {
+        byte[] record = assembler.completePartial();
+        if (record != null) {
+            lastRecordNanos = System.nanoTime();
+            handler.recordReceived(record);
+        }
+    }
+    
+    void setMaxRecordSize(int maxRecordSize) {
+        assembler.setMaxRecordSize(maxRecordSize);
+    }
+    
+    void setRecordFlushDelay(int millis) {
+        this.recordFlushDelay = millis;
+    }
+    
+    int getRecordFlushDelay() {
+        return recordFlushDelay;
+    }
+    
+    private boolean isEorFraming() {
+        return eorMode || remoteOptions[TELOPT_EOR];
+    }
+    
+    private int findDataRunEnd(byte[] data, int from, int end) {
+        boolean lineMode = !isEorFraming() && !binaryMode;
+        for (int i = from; i < end; i++) {
+            byte b = data[i];
+            if (b == IAC || (lineMode && b == 0x0A)) {
+                return i;
             }
         }
+        return end;
+    }
+    
+    private void appendData(byte[] data, int offset, int length, RecordHandler handler) {
+        if (isEorFraming()) {
+            assembler.append(data, offset, length);
+            return;
+        }
         
-        return dataBuffer.toByteArray();
+        while (length > 0) {
+            int count = Math.min(length, assembler.remainingCapacity());
+            assembler.append(data, offset, count);
+            offset += count;
+            length -= count;
+            if (assembler.remainingCapacity() == 0) {
+                flushPendingRecord(handler);
+            }
+        }
+    }
+    
+    private void appendData(byte b, RecordHandler handler) {
+        assembler.append(b);
+        if (!isEorFraming() && assembler.remainingCapacity() == 0) {
+            flushPendingRecord(handler);
+        }
+    }
+    
+    private void appendSub(byte b) {
+        if (subLength == subBuffer.length) {
+            subBuffer = Arrays.copyOf(subBuffer, subBuffer.length * 2);
+        }
+        subBuffer[subLength++] = b;
+    }
+    
+    private void emitRecord(RecordHandler handler) {
+        byte[] record = assembler.complete();
+        if (record != null) {
+            lastRecordNanos = System.nanoTime();
+            handler.recordReceived(record);
+        }
     }
     
     public void send(byte[] data) throws IOException {
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        
-        for (byte b : data) {
-            if (b == IAC) {
-                output.write(IAC);
-                output.write(IAC);
+        synchronized (writeLock) {
+            ByteBuffer record = ensureSendCapacity(data.length * 2 + EOR_TRAILER.length);
+            record.put(data);
+            record.flip();
+            sendRecord(record);
+        }
+    }
+    
+    void sendRecord(ByteBuffer record) throws IOException {
+        lastRecordNanos = System.nanoTime();
+        synchronized (writeLock) {
+            if (connection != null) {
+                sendVectored(record);
             } else {
-                output.write(b);
+                sendInPlace(record);
             }
         }
+    }
+    
+    private void sendInPlace(ByteBuffer record) throws IOException {
+        byte[] array = record.array();
+        int offset = record.arrayOffset() + record.position();
+        int length = record.remaining();
+        int iacCount = countIac(array, offset, length);
+        
+        if (record.position() + length + iacCount + EOR_TRAILER.length > record.capacity()) {
+            ByteBuffer copy = ensureSendCapacity(length + iacCount + EOR_TRAILER.length);
+            System.arraycopy(array, offset, copy.array(), 0, length);
+            array = copy.array();
+            offset = 0;
+        }
+        
+        if (iacCount > 0) {
+            escapeInPlace(array, offset, length, iacCount);
+            length += iacCount;
+        }
         
         if (eorMode) {
-            output.write(IAC);
-            output.write(EOR);
+            array[offset + length++] = IAC;
+            array[offset + length++] = EOR;
         }
         
-        outputStream.write(output.toByteArray());
+        outputStream.write(array, offset, length);
         outputStream.flush();
     }
     
+    private void sendVectored(ByteBuffer record) throws IOException {
+        byte[] array = record.array();
+        int base = record.arrayOffset();
+        int end = record.limit();
+        int count = 0;
+        
+        int segmentStart = record.position();
+        for (int i = segmentStart; i < end; i++) {
+            if (array[base + i] == IAC) {
+                vector = ensureVectorCapacity(count + 3);
+                vector[count++] = slice(record, segmentStart, i + 1);
+                segmentStart = i;
+            }
+        }
+        
+        vector = ensureVectorCapacity(count + 2);
+        ByteBuffer last = count == 0 ? record : slice(record, segmentStart, end);
+        vector[count++] = last;
+        if (eorMode) {
+            eorTrailer.clear();
+            vector[count++] = eorTrailer;
+        }
+        
+        connection.write(vector, count);
+        Arrays.fill(vector, 0, count, null);
+    }
+    
+    private static ByteBuffer slice(ByteBuffer buffer, int from, int to) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(to);
+        slice.position(from);
+        return slice;
+    }
+    
+    private static int countIac(byte[] data, int offset, int length) {
+        int count = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            if (data[i] == IAC) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    private static void escapeInPlace(byte[] data, int offset, int length, int iacCount) {
+        int src = offset + length - 1;
+        int dst = src + iacCount;
+        while (iacCount > 0) {
+            byte b = data[src--];
+            data[dst--] = b;
+            if (b == IAC) {
+                data[dst--] = IAC;
+                iacCount--;
+            }
+        }
+    }
+    
+    private ByteBuffer ensureSendCapacity(int capacity) {
+        if (sendBuffer.capacity() < capacity) {
+            sendBuffer = ByteBuffer.allocate(Math.max(capacity, sendBuffer.capacity() * 2));
+        }
+        sendBuffer.clear();
+        return sendBuffer;
+    }
+    
+    private ByteBuffer[] ensureVectorCapacity(int capacity) {
+        if (vector.length < capacity) {
+            return Arrays.copyOf(vector, Math.max(capacity, vector.length * 2));
+        }
+        return vector;
+    }
+    
     private void processOption(byte command, byte option) throws IOException {
         logger.fine(String.format("Telnet option: %s %s", commandToString(command), optionToString(option)));
         
+        if (option == TELOPT_TIMING && timingMarkPending && (command == WILL || command == WONT)) {
+            timingMarkPending = false;
+            CompletableFuture<Void> reply = timingMarkReply.getAndSet(null);
+            if (reply != null) {
+                reply.complete(null);
+            }
+            return;
+        }
+        
         switch (command) {
             case WILL:
                 handleWill(option);
@@ -302,67 +583,104 @@ public class TelnetStream implements Closeable {
         }
     }
     
+    void sendKeepalive(KeepaliveMode mode) throws IOException {
+        byte[] probe = mode == KeepaliveMode.TIMING_MARK ? TIMING_MARK_PROBE : NOP_PROBE;
+        synchronized (writeLock) {
+            if (mode == KeepaliveMode.TIMING_MARK) {
+                timingMarkPending = true;
+            }
+            if (connection != null) {
+                vector[0] = ByteBuffer.wrap(probe);
+                connection.write(vector, 1);
+                vector[0] = null;
+            } else {
+                outputStream.write(probe);
+                outputStream.flush();
+            }
+        }
+    }
+    
+    CompletableFuture<Void> probe() throws IOException {
+        CompletableFuture<Void> reply = timingMarkReply.updateAndGet(
+                current -> current != null ? current : new CompletableFuture<>());
+        sendKeepalive(KeepaliveMode.TIMING_MARK);
+        return reply;
+    }
+    
+    long getLastReceiveNanos() {
+        return lastReceiveNanos;
+    }
+    
+    long getLastRecordNanos() {
+        return lastRecordNanos;
+    }
+    
     private void sendTerminalType() throws IOException {
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        output.write(IAC);
-        output.write(SB);
-        output.write(TELOPT_TTYPE);
-        output.write(IS);
-        output.write(terminalType.getNameBytes());
-        output.write(IAC);
-        output.write(SE);
-        
-        outputStream.write(output.toByteArray());
-        outputStream.flush();
+        putControl(IAC, SB, TELOPT_TTYPE, IS);
+        putControl(terminalType.getNameBytes());
+        putControl(IAC, SE);
         
         logger.info("Sent terminal type: " + terminalType.getName());
     }
     
     private void sendTn3270eDeviceType() throws IOException {
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        output.write(IAC);
-        output.write(SB);
-        output.write(TELOPT_TN3270E);
-        output.write(TN3270E_DEVICE_TYPE);
-        output.write(TN3270E_IS);
-        output.write(terminalType.getNameBytes());
-        output.write(IAC);
-        output.write(SE);
-        
-        outputStream.write(output.toByteArray());
-        outputStream.flush();
+        putControl(IAC, SB, TELOPT_TN3270E, TN3270E_DEVICE_TYPE, TN3270E_IS);
+        putControl(terminalType.getNameBytes());
+        putControl(IAC, SE);
         
         logger.info("Sent TN3270E device type: " + terminalType.getName());
     }
     
     private void sendTn3270eFunctions() throws IOException {
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        output.write(IAC);
-        output.write(SB);
-        output.write(TELOPT_TN3270E);
-        output.write(TN3270E_FUNCTIONS);
-        output.write(TN3270E_IS);
-        output.write(IAC);
-        output.write(SE);
-        
-        outputStream.write(output.toByteArray());
-        outputStream.flush();
+        putControl(IAC, SB, TELOPT_TN3270E, TN3270E_FUNCTIONS, TN3270E_IS, IAC, SE);
     }
     
     private void sendWill(byte option) throws IOException {
-        outputStream.write(new byte[]{IAC, WILL, option});
+        putControl(IAC, WILL, option);
     }
     
     private void sendWont(byte option) throws IOException {
-        outputStream.write(new byte[]{IAC, WONT, option});
+        putControl(IAC, WONT, option);
     }
     
     private void sendDo(byte option) throws IOException {
-        outputStream.write(new byte[]{IAC, DO, option});
+        putControl(IAC, DO, option);
     }
     
     private void sendDont(byte option) throws IOException {
-        outputStream.write(new byte[]{IAC, DONT, option});
+        putControl(IAC, DONT, option);
+    }
+    
+    private void putControl(byte... bytes) {
+        if (control.remaining() < bytes.length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(control.capacity() * 2, control.position() + bytes.length));
+            control.flip();
+            larger.put(control);
+            control = larger;
+        }
+        control.put(bytes);
+    }
+    
+    private void flushControl() throws IOException {
+        if (control.position() == 0) {
+            return;
+        }
+        
+        synchronized (writeLock) {
+            control.flip();
+            try {
+                if (connection != null) {
+                    vector[0] = control;
+                    connection.write(vector, 1);
+                    vector[0] = null;
+                } else {
+                    outputStream.write(control.array(), 0, control.limit());
+                    outputStream.flush();
+                }
+            } finally {
+                control.clear();
+            }
+        }
     }
     
     private String commandToString(byte command) {
@@ -380,6 +698,7 @@ public class TelnetStream implements Closeable {
             case TELOPT_BINARY: return "BINARY";
             case TELOPT_ECHO: return "ECHO";
             case TELOPT_SGA: return "SGA";
+            case TELOPT_TIMING: return "TIMING-MARK";
             case TELOPT_TTYPE: return "TERMINAL-TYPE";
             case TELOPT_EOR: return "END-OF-RECORD";
             case TELOPT_TN3270E: return "TN3270E";
@@ -401,6 +720,10 @@ public class TelnetStream implements Closeable {
     
     @Override
     public void close() throws IOException {
+        if (connection != null) {
+            connection.close();
+            return;
+        }
         inputStream.close();
         outputStream.close();
     }
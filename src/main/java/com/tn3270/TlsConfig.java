@@ -0,0 +1,190 @@
+package com.tn3270;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+public class TlsConfig {
+    private static final TlsConfig defaultConfig = new TlsConfig();
+    
+    private SSLContext customContext;
+    private KeyStore trustStore;
+    private KeyStore keyStore;
+    private char[] keyPassword;
+    private String protocol = "TLS";
+    private String[] protocols;
+    private String[] cipherSuites;
+    private int sessionCacheSize = -1;
+    private int sessionTimeout = -1;
+    private boolean hostnameVerification;
+    
+    private SSLContext context;
+    private boolean sharedContext;
+    
+    public static TlsConfig getDefault() {
+        return defaultConfig;
+    }
+    
+    public synchronized TlsConfig setSSLContext(SSLContext context) {
+        this.customContext = context;
+        this.context = null;
+        return this;
+    }
+    
+    public synchronized TlsConfig setTrustStore(KeyStore trustStore) {
+        this.trustStore = trustStore;
+        this.context = null;
+        return this;
+    }
+    
+    public synchronized TlsConfig setKeyStore(KeyStore keyStore, char[] password) {
+        this.keyStore = keyStore;
+        this.keyPassword = password == null ? null : password.clone();
+        this.context = null;
+        return this;
+    }
+    
+    public synchronized TlsConfig setProtocol(String protocol) {
+        if (protocol == null) {
+            throw new IllegalArgumentException("Protocol must not be null");
+        }
+        this.protocol = protocol;
+        this.context = null;
+        return this;
+    }
+    
+    public synchronized TlsConfig setEnabledProtocols(String... protocols) {
+        this.protocols = protocols == null || protocols.length == 0 ? null : protocols.clone();
+        return this;
+    }
+    
+    public synchronized TlsConfig setEnabledCipherSuites(String... cipherSuites) {
+        this.cipherSuites = cipherSuites == null || cipherSuites.length == 0 ? null : cipherSuites.clone();
+        return this;
+    }
+    
+    public synchronized TlsConfig setSessionCacheSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Session cache size must not be negative");
+        }
+        this.sessionCacheSize = size;
+        applySessionSettings();
+        return this;
+    }
+    
+    public synchronized TlsConfig setSessionTimeout(int seconds) {
+        if (seconds < 0) {
+            throw new IllegalArgumentException("Session timeout must not be negative");
+        }
+        this.sessionTimeout = seconds;
+        applySessionSettings();
+        return this;
+    }
+    
+    public synchronized TlsConfig setHostnameVerification(boolean enabled) {
+        this.hostnameVerification = enabled;
+        return this;
+    }
+    
+    public synchronized SSLContext getSSLContext() throws IOException {
+        if (context == null) {
+            context = createContext();
+            applySessionSettings();
+        }
+        return context;
+    }
+    
+    public SSLSessionContext getSessionContext() throws IOException {
+        return getSSLContext().getClientSessionContext();
+    }
+    
+    SSLSocket createSocket() throws IOException {
+        SSLSocket socket = (SSLSocket) getSSLContext().getSocketFactory().createSocket();
+        socket.setSSLParameters(configure(socket.getSSLParameters()));
+        return socket;
+    }
+    
+    SSLEngine createEngine(String host, int port) throws IOException {
+        SSLEngine engine = getSSLContext().createSSLEngine(host, port);
+        engine.setUseClientMode(true);
+        engine.setSSLParameters(configure(engine.getSSLParameters()));
+        return engine;
+    }
+    
+    private synchronized SSLParameters configure(SSLParameters parameters) {
+        if (protocols != null) {
+            parameters.setProtocols(protocols);
+        }
+        if (cipherSuites != null) {
+            parameters.setCipherSuites(cipherSuites);
+        }
+        if (hostnameVerification) {
+            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        }
+        return parameters;
+    }
+    
+    private SSLContext createContext() throws IOException {
+        sharedContext = false;
+        if (customContext != null) {
+            return customContext;
+        }
+        
+        try {
+            if (trustStore == null && keyStore == null && "TLS".equals(protocol) && sessionCacheSize < 0
+                    && sessionTimeout < 0) {
+                sharedContext = true;
+                return SSLContext.getDefault();
+            }
+            
+            TrustManager[] trustManagers = null;
+            if (trustStore != null) {
+                TrustManagerFactory factory = TrustManagerFactory.getInstance(
+                        TrustManagerFactory.getDefaultAlgorithm());
+                factory.init(trustStore);
+                trustManagers = factory.getTrustManagers();
+            }
+            
+            KeyManager[] keyManagers = null;
+            if (keyStore != null) {
+                KeyManagerFactory factory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+                factory.init(keyStore, keyPassword);
+                keyManagers = factory.getKeyManagers();
+            }
+            
+            SSLContext created = SSLContext.getInstance(protocol);
+            created.init(keyManagers, trustManagers, null);
+            return created;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to initialise TLS: " + e.getMessage(), e);
+        }
+    }
+    
+    private void applySessionSettings() {
+        if (context == null) {
+            return;
+        }
+        if (sharedContext) {
+            if (sessionCacheSize >= 0 || sessionTimeout >= 0) {
+                context = null;
+            }
+            return;
+        }
+        SSLSessionContext sessions = context.getClientSessionContext();
+        if (sessionCacheSize >= 0) {
+            sessions.setSessionCacheSize(sessionCacheSize);
+        }
+        if (sessionTimeout >= 0) {
+            sessions.setSessionTimeout(sessionTimeout);
+        }
+    }
+}
\ No newline at end of file
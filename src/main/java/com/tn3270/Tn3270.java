@@ -4,17 +4,53 @@ import javax.net.ssl.*;
 import java.io.*;
 import java.net.Socket;
 import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.logging.Logger;
 
 public class Tn3270 {
+    public interface ConnectionListener {
+        void connectionLost(Tn3270 session, IOException cause);
+    }
+    
     private static final Logger logger = Logger.getLogger(Tn3270.class.getName());
     
+    private static final int READ_CHUNK_SIZE = 16384;
+    private static final int DEFAULT_KEEPALIVE_INTERVAL = 30000;
+    private static final int DEFAULT_KEEPALIVE_TIMEOUT = 10000;
+    private static final int DEFAULT_TRANSPORT_STAGGER = 300;
+    private static final long DEFAULT_TRANSPORT_CACHE_TTL = 600000;
+    private static final AtomicInteger connectorCount = new AtomicInteger();
+    private static final ExecutorService connector = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "TN3270-Connect-" + connectorCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    
     private String host;
     private int port = 23;
     private int sslPort = 992;
     private int connectTimeout = 10000;
     private int readTimeout = 30000;
+    private int maxRecordSize = TelnetStream.DEFAULT_MAX_RECORD_SIZE;
+    private int recordFlushDelay = TelnetStream.DEFAULT_RECORD_FLUSH_DELAY;
+    private int keepaliveInterval = DEFAULT_KEEPALIVE_INTERVAL;
+    private int keepaliveTimeout = DEFAULT_KEEPALIVE_TIMEOUT;
+    private KeepaliveMode keepaliveMode = KeepaliveMode.TIMING_MARK;
+    private int idleTimeout;
     
     private Socket socket;
     private InputStream inputStream;
@@ -25,12 +61,23 @@ public class Tn3270 {
     private final AtomicBoolean useSSL = new AtomicBoolean(true);
     
     private Screen screen;
+    private final List<ConnectionListener> connectionListeners = new CopyOnWriteArrayList<>();
+    private final TelnetStream.RecordHandler recordHandler;
     private TerminalType terminalType = TerminalType.IBM_3278_2_E;
     
     private Thread readerThread;
+    private volatile KeepaliveMonitor keepaliveMonitor;
+    
+    private EventLoopGroup eventLoopGroup;
+    private NioConnection nioConnection;
+    private TlsConfig tlsConfig = TlsConfig.getDefault();
+    
+    private int transportStagger = DEFAULT_TRANSPORT_STAGGER;
+    private long transportCacheTtl = DEFAULT_TRANSPORT_CACHE_TTL;
     
     public Tn3270() {
-        this.screen = new Screen(this);
+        this.screen = new Screen(this, terminalType);
+        this.recordHandler = screen::processIncomingData;
     }
     
     public Tn3270(String host) {
@@ -68,11 +115,97 @@ public class Tn3270 {
         return this;
     }
     
+    public Tn3270 setMaxRecordSize(int bytes) {
+        if (bytes < 1) {
+            throw new IllegalArgumentException("Maximum record size must be positive");
+        }
+        this.maxRecordSize = bytes;
+        return this;
+    }
+    
+    public Tn3270 setRecordFlushDelay(int millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Record flush delay must not be negative");
+        }
+        this.recordFlushDelay = millis;
+        return this;
+    }
+    
+    public Tn3270 setKeepaliveInterval(int millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Keepalive interval must not be negative");
+        }
+        this.keepaliveInterval = millis;
+        return this;
+    }
+    
+    public Tn3270 setKeepaliveTimeout(int millis) {
+        if (millis < 1) {
+            throw new IllegalArgumentException("Keepalive timeout must be positive");
+        }
+        this.keepaliveTimeout = millis;
+        return this;
+    }
+    
+    public Tn3270 setKeepaliveMode(KeepaliveMode mode) {
+        if (mode == null) {
+            throw new IllegalArgumentException("Keepalive mode must not be null");
+        }
+        this.keepaliveMode = mode;
+        return this;
+    }
+    
+    public Tn3270 setIdleTimeout(int millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Idle timeout must not be negative");
+        }
+        this.idleTimeout = millis;
+        return this;
+    }
+    
     public Tn3270 setTerminalType(TerminalType type) {
         this.terminalType = type;
+        screen.setTerminalType(type);
+        return this;
+    }
+    
+    public Tn3270 setEventLoopGroup(EventLoopGroup group) {
+        this.eventLoopGroup = group;
+        return this;
+    }
+    
+    public Tn3270 setTlsConfig(TlsConfig config) {
+        if (config == null) {
+            throw new IllegalArgumentException("TLS config must not be null");
+        }
+        this.tlsConfig = config;
         return this;
     }
     
+    public TlsConfig getTlsConfig() {
+        return tlsConfig;
+    }
+    
+    public Tn3270 setTransportStagger(int millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Transport stagger must not be negative");
+        }
+        this.transportStagger = millis;
+        return this;
+    }
+    
+    public Tn3270 setTransportCacheTtl(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Transport cache TTL must not be negative");
+        }
+        this.transportCacheTtl = millis;
+        return this;
+    }
+    
+    public static void clearTransportCache() {
+        TransportCache.clear();
+    }
+    
     public Tn3270 connect() throws IOException {
         if (connected.get()) {
             throw new IllegalStateException("Already connected");
@@ -82,66 +215,144 @@ public class Tn3270 {
             throw new IllegalArgumentException("Host must be specified");
         }
         
-        Exception lastException = null;
+        String key = TransportCache.key(host, port, sslPort);
+        Boolean cached = transportCacheTtl > 0 ? TransportCache.lookup(key) : null;
+        ConnectAttempt attempt = null;
         
-        if (useSSL.get()) {
+        if (cached != null) {
             try {
-                connectSSL();
-                return this;
-            } catch (SSLHandshakeException e) {
-                logger.warning("SSL handshake failed, falling back to plain connection: " + e.getMessage());
-                lastException = e;
-                useSSL.set(false);
+                attempt = new ConnectAttempt(cached && useSSL.get()).runNow();
             } catch (IOException e) {
-                lastException = e;
+                logger.fine("Cached transport for " + key + " failed, racing transports: " + e.getMessage());
+                TransportCache.remove(key);
             }
         }
         
-        try {
-            connectPlain();
-        } catch (IOException e) {
-            if (lastException != null) {
-                e.addSuppressed(lastException);
-            }
-            throw e;
+        if (attempt == null) {
+            attempt = useSSL.get() ? race() : new ConnectAttempt(false).runNow();
         }
         
+        if (transportCacheTtl > 0 && attempt.cacheable) {
+            TransportCache.put(key, attempt.ssl, transportCacheTtl);
+        }
+        establish(attempt);
         return this;
     }
     
-    private void connectSSL() throws IOException {
-        SSLSocketFactory factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
-        SSLSocket sslSocket = (SSLSocket) factory.createSocket();
+    private ConnectAttempt race() throws IOException {
+        ConnectAttempt ssl = new ConnectAttempt(true);
+        ConnectAttempt plain = new ConnectAttempt(false);
+        CompletableFuture<ConnectAttempt> winner = new CompletableFuture<>();
+        
+        BiConsumer<ConnectAttempt, Throwable> outcome = (attempt, error) -> {
+            boolean sslDone = ssl.result.isDone();
+            boolean sslFailed = ssl.result.isCompletedExceptionally();
+            boolean sslReachable = ssl.isReachable();
+            boolean plainDone = plain.result.isDone();
+            boolean plainFailed = plain.result.isCompletedExceptionally();
+            
+            if (sslDone && !sslFailed) {
+                winner.complete(ssl);
+            } else if (plainDone && !plainFailed && (sslDone || !sslReachable)) {
+                winner.complete(plain);
+            } else if (sslFailed && plainFailed) {
+                IOException failure = plain.failure();
+                failure.addSuppressed(ssl.failure());
+                winner.completeExceptionally(failure);
+            }
+            if (error == null && winner.isDone() && winner.getNow(null) != attempt) {
+                attempt.close();
+            }
+        };
         
-        sslSocket.connect(new InetSocketAddress(host, sslPort), connectTimeout);
-        sslSocket.setSoTimeout(readTimeout);
-        sslSocket.startHandshake();
+        ssl.result.whenComplete((attempt, error) -> {
+            if (error != null) {
+                if (error instanceof SSLHandshakeException) {
+                    logger.warning("SSL handshake failed, falling back to plain connection: " + error.getMessage());
+                    useSSL.set(false);
+                }
+                plain.start();
+            }
+        });
+        ssl.result.whenComplete(outcome);
+        plain.result.whenComplete(outcome);
         
-        this.socket = sslSocket;
-        setupStreams();
-        startReaderThread();
-        connected.set(true);
+        ssl.start();
+        ScheduledFuture<?> stagger = SharedTimer.get().schedule(() -> {
+            if (!ssl.isReachable()) {
+                plain.start();
+            }
+        }, transportStagger, TimeUnit.MILLISECONDS);
         
-        logger.info("Connected to " + host + ":" + sslPort + " using SSL");
+        try {
+            ConnectAttempt attempt = connectTimeout > 0
+                    ? winner.get(transportStagger + 2L * connectTimeout, TimeUnit.MILLISECONDS) : winner.get();
+            (attempt == ssl ? plain : ssl).cancel();
+            attempt.cacheable = attempt.ssl || !ssl.isReachable();
+            return attempt;
+        } catch (InterruptedException e) {
+            ssl.cancel();
+            plain.cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while connecting");
+        } catch (TimeoutException e) {
+            ssl.cancel();
+            plain.cancel();
+            throw new SocketTimeoutException("Connect to " + host + " timed out");
+        } catch (ExecutionException e) {
+            throw (IOException) e.getCause();
+        } finally {
+            stagger.cancel(false);
+        }
     }
     
-    private void connectPlain() throws IOException {
-        Socket plainSocket = new Socket();
-        plainSocket.connect(new InetSocketAddress(host, port), connectTimeout);
-        plainSocket.setSoTimeout(readTimeout);
+    private void establish(ConnectAttempt attempt) throws IOException {
+        int targetPort = attempt.ssl ? sslPort : port;
+        if (attempt.connection != null) {
+            this.nioConnection = attempt.connection;
+            this.telnetStream = new TelnetStream(nioConnection, terminalType);
+            configureFraming();
+            connected.set(true);
+            nioConnection.startReading();
+        } else {
+            this.socket = attempt.socket;
+            setupStreams();
+            startReaderThread();
+            connected.set(true);
+        }
         
-        this.socket = plainSocket;
-        setupStreams();
-        startReaderThread();
-        connected.set(true);
+        logger.info("Connected to " + host + ":" + targetPort + (attempt.ssl ? " using SSL" : " using plain connection"));
+        startKeepalive();
+    }
+    
+    private void startKeepalive() {
+        long period = Long.MAX_VALUE;
+        if (keepaliveInterval > 0) {
+            period = Math.min(keepaliveInterval, keepaliveTimeout);
+        }
+        if (idleTimeout > 0) {
+            period = Math.min(period, idleTimeout);
+        }
+        if (period == Long.MAX_VALUE) {
+            return;
+        }
         
-        logger.info("Connected to " + host + ":" + port + " using plain connection");
+        period = Math.max(100, Math.min(1000, period / 4));
+        KeepaliveMonitor monitor = new KeepaliveMonitor(telnetStream);
+        monitor.future = SharedTimer.get().scheduleWithFixedDelay(monitor, period, period, TimeUnit.MILLISECONDS);
+        keepaliveMonitor = monitor;
     }
     
     private void setupStreams() throws IOException {
-        this.inputStream = new BufferedInputStream(socket.getInputStream());
-        this.outputStream = new BufferedOutputStream(socket.getOutputStream());
+        this.inputStream = socket.getInputStream();
+        this.outputStream = socket.getOutputStream();
         this.telnetStream = new TelnetStream(inputStream, outputStream, terminalType);
+        configureFraming();
+    }
+    
+    private void configureFraming() {
+        telnetStream.setMaxRecordSize(maxRecordSize);
+        telnetStream.setRecordFlushDelay(recordFlushDelay);
     }
     
     private void startReaderThread() {
@@ -151,11 +362,22 @@ public class Tn3270 {
     }
     
     public Tn3270 disconnect() {
+        close();
+        return this;
+    }
+    
+    private boolean close() {
         if (!connected.compareAndSet(true, false)) {
-            return this;
+            return false;
+        }
+        
+        KeepaliveMonitor monitor = keepaliveMonitor;
+        if (monitor != null) {
+            monitor.cancel();
+            keepaliveMonitor = null;
         }
         
-        if (readerThread != null) {
+        if (readerThread != null && readerThread != Thread.currentThread()) {
             readerThread.interrupt();
             try {
                 readerThread.join(1000);
@@ -164,13 +386,35 @@ public class Tn3270 {
             }
         }
         
+        if (nioConnection != null) {
+            nioConnection.close();
+            nioConnection = null;
+        }
+        
         closeQuietly(telnetStream);
         closeQuietly(inputStream);
         closeQuietly(outputStream);
         closeQuietly(socket);
         
         logger.info("Disconnected from " + host);
-        return this;
+        return true;
+    }
+    
+    private void connectionLost(IOException cause) {
+        if (!connected.get()) {
+            return;
+        }
+        
+        logger.severe("Connection error: " + cause.getMessage());
+        if (close()) {
+            for (ConnectionListener listener : connectionListeners) {
+                try {
+                    listener.connectionLost(this, cause);
+                } catch (RuntimeException e) {
+                    logger.warning("Connection listener failed: " + e.getMessage());
+                }
+            }
+        }
     }
     
     private void closeQuietly(Closeable closeable) {
@@ -184,6 +428,10 @@ public class Tn3270 {
     }
     
     public boolean isConnected() {
+        NioConnection connection = nioConnection;
+        if (connection != null) {
+            return connected.get() && connection.isOpen();
+        }
         return connected.get() && socket != null && !socket.isClosed();
     }
     
@@ -191,6 +439,42 @@ public class Tn3270 {
         return screen;
     }
     
+    public String getHost() {
+        return host;
+    }
+    
+    public int getPort() {
+        return port;
+    }
+    
+    public int getSslPort() {
+        return sslPort;
+    }
+    
+    public Tn3270 addConnectionListener(ConnectionListener listener) {
+        connectionListeners.add(listener);
+        return this;
+    }
+    
+    public Tn3270 removeConnectionListener(ConnectionListener listener) {
+        connectionListeners.remove(listener);
+        return this;
+    }
+    
+    boolean probe(long timeout, TimeUnit unit) throws InterruptedException {
+        TelnetStream stream = telnetStream;
+        if (!isConnected() || stream == null) {
+            return false;
+        }
+        try {
+            stream.probe().get(timeout, unit);
+            return true;
+        } catch (IOException | ExecutionException | TimeoutException e) {
+            logger.fine("Health probe to " + host + " failed: " + e);
+            return false;
+        }
+    }
+    
     void sendData(byte[] data) throws IOException {
         if (!isConnected()) {
             throw new IOException("Not connected");
@@ -198,22 +482,288 @@ public class Tn3270 {
         telnetStream.send(data);
     }
     
+    void sendRecord(ByteBuffer record) throws IOException {
+        if (!isConnected()) {
+            throw new IOException("Not connected");
+        }
+        telnetStream.sendRecord(record);
+    }
+    
+    private class ConnectAttempt {
+        private final boolean ssl;
+        private final CompletableFuture<ConnectAttempt> result = new CompletableFuture<>();
+        private final AtomicBoolean started = new AtomicBoolean();
+        private volatile Socket socket;
+        private volatile NioConnection connection;
+        private volatile boolean cancelled;
+        private volatile boolean reachable;
+        private boolean cacheable = true;
+        
+        ConnectAttempt(boolean ssl) {
+            this.ssl = ssl;
+        }
+        
+        void start() {
+            if (started.compareAndSet(false, true)) {
+                connector.execute(this::run);
+            }
+        }
+        
+        ConnectAttempt runNow() throws IOException {
+            started.set(true);
+            run();
+            if (result.isCompletedExceptionally()) {
+                throw failure();
+            }
+            return this;
+        }
+        
+        private void run() {
+            try {
+                open();
+                if (cancelled) {
+                    close();
+                    throw new IOException("Connect attempt cancelled");
+                }
+                result.complete(this);
+            } catch (IOException e) {
+                close();
+                result.completeExceptionally(e);
+            } catch (RuntimeException e) {
+                close();
+                result.completeExceptionally(new IOException("Connect attempt failed: " + e.getMessage(), e));
+            }
+        }
+        
+        private void open() throws IOException {
+            int targetPort = ssl ? sslPort : port;
+            if (eventLoopGroup != null) {
+                EventLoop loop = eventLoopGroup.next();
+                SSLEngine engine = ssl ? tlsConfig.createEngine(host, targetPort) : null;
+                connection = new NioConnection(loop, engine, new NioSessionHandler(loop));
+                awaitConnected(connection.connect(new InetSocketAddress(host, targetPort)));
+            } else if (ssl) {
+                SSLSocket sslSocket = tlsConfig.createSocket();
+                socket = sslSocket;
+                sslSocket.connect(new InetSocketAddress(host, targetPort), connectTimeout);
+                reachable = true;
+                sslSocket.setSoTimeout(readTimeout);
+                sslSocket.startHandshake();
+            } else {
+                Socket plainSocket = new Socket();
+                socket = plainSocket;
+                plainSocket.connect(new InetSocketAddress(host, targetPort), connectTimeout);
+                reachable = true;
+                plainSocket.setSoTimeout(readTimeout);
+            }
+        }
+        
+        boolean isReachable() {
+            NioConnection nio = connection;
+            return reachable || (nio != null && nio.isTransportConnected());
+        }
+        
+        private void awaitConnected(CompletableFuture<Void> ready) throws IOException {
+            try {
+                ready.get(connectTimeout, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                throw new SocketTimeoutException("Connect timed out");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while connecting");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("Connect failed", cause);
+            }
+        }
+        
+        IOException failure() {
+            try {
+                result.getNow(null);
+                return null;
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                return cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            }
+        }
+        
+        void cancel() {
+            cancelled = true;
+            close();
+        }
+        
+        void close() {
+            NioConnection nio = connection;
+            if (nio != null) {
+                nio.close();
+            }
+            closeQuietly(socket);
+        }
+    }
+    
+    private class KeepaliveMonitor implements Runnable {
+        private final TelnetStream stream;
+        private volatile ScheduledFuture<?> future;
+        private long lastProbeNanos = System.nanoTime();
+        private boolean probePending;
+        private volatile boolean probeWriting;
+        
+        KeepaliveMonitor(TelnetStream stream) {
+            this.stream = stream;
+        }
+        
+        @Override
+        public void run() {
+            if (!connected.get() || telnetStream != stream) {
+                cancel();
+                return;
+            }
+            
+            long now = System.nanoTime();
+            if (idleTimeout > 0 && now - stream.getLastRecordNanos() >= TimeUnit.MILLISECONDS.toNanos(idleTimeout)) {
+                logger.info("Session idle for " + idleTimeout + "ms, disconnecting from " + host);
+                cancel();
+                connector.execute(Tn3270.this::disconnect);
+                return;
+            }
+            if (keepaliveInterval == 0) {
+                return;
+            }
+            
+            long lastReceive = stream.getLastReceiveNanos();
+            if (probeWriting) {
+                if (now - lastProbeNanos >= TimeUnit.MILLISECONDS.toNanos(keepaliveTimeout)) {
+                    lost(new IOException("Keepalive probe to " + host + " not written within " + keepaliveTimeout
+                            + "ms"));
+                }
+                return;
+            }
+            if (probePending) {
+                if (lastReceive - lastProbeNanos >= 0) {
+                    probePending = false;
+                } else if (now - lastProbeNanos >= TimeUnit.MILLISECONDS.toNanos(keepaliveTimeout)) {
+                    lost(new IOException("No keepalive response from " + host + " within " + keepaliveTimeout
+                            + "ms"));
+                    return;
+                } else {
+                    return;
+                }
+            }
+            
+            if (now - Math.max(lastReceive, lastProbeNanos) >= TimeUnit.MILLISECONDS.toNanos(keepaliveInterval)) {
+                KeepaliveMode mode = keepaliveMode;
+                lastProbeNanos = now;
+                probePending = mode == KeepaliveMode.TIMING_MARK;
+                probeWriting = true;
+                connector.execute(() -> probe(mode));
+            }
+        }
+        
+        private void probe(KeepaliveMode mode) {
+            try {
+                stream.sendKeepalive(mode);
+            } catch (IOException e) {
+                if (connected.get() && telnetStream == stream) {
+                    lost(e);
+                }
+            } finally {
+                probeWriting = false;
+            }
+        }
+        
+        private void lost(IOException cause) {
+            cancel();
+            connector.execute(() -> connectionLost(cause));
+        }
+        
+        void cancel() {
+            ScheduledFuture<?> scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+    
     private class DataStreamReader implements Runnable {
         @Override
         public void run() {
+            byte[] chunk = new byte[READ_CHUNK_SIZE];
+            int soTimeout = readTimeout;
             try {
                 while (connected.get() && !Thread.currentThread().isInterrupted()) {
-                    byte[] data = telnetStream.receive();
-                    if (data != null && data.length > 0) {
-                        screen.processIncomingData(data);
+                    boolean pending = telnetStream.hasPendingRecord();
+                    int timeout = pending ? recordFlushDelay : readTimeout;
+                    if (timeout != soTimeout) {
+                        socket.setSoTimeout(timeout);
+                        soTimeout = timeout;
                     }
+                    
+                    int count;
+                    try {
+                        count = inputStream.read(chunk);
+                    } catch (SocketTimeoutException e) {
+                        if (pending) {
+                            telnetStream.flushPendingRecord(recordHandler);
+                        }
+                        continue;
+                    }
+                    
+                    if (count == -1) {
+                        throw new IOException("Connection closed");
+                    }
+                    screen.bytesReceived(System.nanoTime());
+                    telnetStream.feed(chunk, 0, count, recordHandler);
                 }
             } catch (IOException e) {
-                if (connected.get()) {
-                    logger.severe("Connection error: " + e.getMessage());
-                    disconnect();
-                }
+                connectionLost(e);
             }
         }
     }
+    
+    private class NioSessionHandler implements NioConnection.Listener {
+        private final EventLoop loop;
+        private EventLoop.ScheduledTask flushTask;
+        private long lastDataNanos;
+        
+        NioSessionHandler(EventLoop loop) {
+            this.loop = loop;
+        }
+        
+        @Override
+        public void dataReceived(ByteBuffer data) throws IOException {
+            screen.bytesReceived(System.nanoTime());
+            telnetStream.feed(data, recordHandler);
+            
+            lastDataNanos = System.nanoTime();
+            if (flushTask == null && telnetStream.hasPendingRecord()) {
+                scheduleFlush(recordFlushDelay);
+            }
+        }
+        
+        private void scheduleFlush(long delayMillis) {
+            flushTask = loop.schedule(this::flushPendingRecord, delayMillis, TimeUnit.MILLISECONDS);
+        }
+        
+        private void flushPendingRecord() {
+            flushTask = null;
+            if (!telnetStream.hasPendingRecord()) {
+                return;
+            }
+            
+            long quiet = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastDataNanos);
+            if (quiet < recordFlushDelay) {
+                scheduleFlush(recordFlushDelay - quiet);
+            } else {
+                telnetStream.flushPendingRecord(recordHandler);
+            }
+        }
+        
+        @Override
+        public void connectionClosed(IOException cause) {
+            connectionLost(cause);
+        }
+    }
 }
\ No newline at end of file
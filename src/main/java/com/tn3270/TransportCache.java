@@ -0,0 +1,48 @@
+package com.tn3270;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+final class TransportCache {
+    private static final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    
+    private TransportCache() {
+    }
+    
+    static String key(String host, int port, int sslPort) {
+        return host.toLowerCase() + ":" + port + ":" + sslPort;
+    }
+    
+    static Boolean lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.expires >= 0) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.ssl;
+    }
+    
+    static void put(String key, boolean ssl, long ttlMillis) {
+        entries.put(key, new Entry(ssl, System.nanoTime() + ttlMillis * 1000000L));
+    }
+    
+    static void remove(String key) {
+        entries.remove(key);
+    }
+    
+    static void clear() {
+        entries.clear();
+    }
+    
+    private static class Entry {
+        private final boolean ssl;
+        private final long expires;
+        
+        Entry(boolean ssl, long expires) {
+            this.ssl = ssl;
+            this.expires = expires;
+        }
+    }
+}
\ No newline at end of file
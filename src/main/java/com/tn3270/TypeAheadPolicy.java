@@ -0,0 +1,7 @@
+package com.tn3270;
+
+public enum TypeAheadPolicy {
+    REJECT,
+    DROP_OLDEST,
+    DROP_NEWEST
+}
\ No newline at end of file
@@ -0,0 +1,89 @@
+package com.tn3270;
+
+import java.util.ArrayDeque;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+class TypeAheadQueue {
+    private static final Logger logger = Logger.getLogger(TypeAheadQueue.class.getName());
+    
+    private final ArrayDeque<Runnable> actions = new ArrayDeque<>();
+    private volatile int depth;
+    private TypeAheadPolicy policy = TypeAheadPolicy.REJECT;
+    private boolean releasing;
+    
+    void configure(int depth, TypeAheadPolicy policy) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("Type-ahead depth must not be negative");
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("Type-ahead policy must not be null");
+        }
+        this.depth = depth;
+        this.policy = policy;
+        while (actions.size() > depth) {
+            actions.pollLast();
+        }
+    }
+    
+    boolean isEnabled() {
+        return depth > 0;
+    }
+    
+    int getDepth() {
+        return depth;
+    }
+    
+    TypeAheadPolicy getPolicy() {
+        return policy;
+    }
+    
+    boolean shouldQueue(boolean keyboardLocked) {
+        return depth > 0 && !releasing && (keyboardLocked || !actions.isEmpty());
+    }
+    
+    void offer(Runnable action) {
+        if (actions.size() >= depth) {
+            switch (policy) {
+                case DROP_OLDEST:
+                    actions.poll();
+                    logger.fine("Type-ahead queue full, dropped oldest input");
+                    break;
+                case DROP_NEWEST:
+                    logger.fine("Type-ahead queue full, dropped new input");
+                    return;
+                default:
+                    throw new IllegalStateException("Keyboard is locked and the type-ahead queue is full");
+            }
+        }
+        actions.add(action);
+    }
+    
+    void release(BooleanSupplier keyboardLocked) {
+        releasing = true;
+        try {
+            Runnable action;
+            while (!keyboardLocked.getAsBoolean() && (action = actions.poll()) != null) {
+                try {
+                    action.run();
+                } catch (RuntimeException e) {
+                    logger.warning("Type-ahead input failed: " + e.getMessage());
+                }
+            }
+        } finally {
+            releasing = false;
+        }
+    }
+    
+    int size() {
+        return actions.size();
+    }
+    
+    boolean isEmpty() {
+        return actions.isEmpty();
+    }
+    
+    void clear() {
+        actions.clear();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,92 @@
+package com.tn3270;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+class UIDispatcher implements Runnable {
+    private static final Logger logger = Logger.getLogger(UIDispatcher.class.getName());
+    
+    static final int DEFAULT_MAX_REFRESH_RATE = 60;
+    private static final int SHARED_THREADS = 2;
+    
+    private static final Object sharedLock = new Object();
+    private static ScheduledExecutorService shared;
+    
+    private final Runnable dispatch;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile ScheduledExecutorService executor;
+    private volatile long minIntervalNanos;
+    private volatile long lastRunNanos;
+    
+    UIDispatcher(Runnable dispatch) {
+        this.dispatch = dispatch;
+        setMaxRefreshRate(DEFAULT_MAX_REFRESH_RATE);
+        this.lastRunNanos = System.nanoTime() - minIntervalNanos;
+    }
+    
+    static ScheduledExecutorService sharedExecutor() {
+        synchronized (sharedLock) {
+            if (shared == null) {
+                AtomicInteger count = new AtomicInteger();
+                ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(SHARED_THREADS, task -> {
+                    Thread thread = new Thread(task, "TN3270-UI-" + count.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                executor.setRemoveOnCancelPolicy(true);
+                shared = executor;
+            }
+            return shared;
+        }
+    }
+    
+    void setExecutor(ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+    
+    void setMaxRefreshRate(int refreshesPerSecond) {
+        if (refreshesPerSecond <= 0) {
+            throw new IllegalArgumentException("Refresh rate must be positive");
+        }
+        this.minIntervalNanos = TimeUnit.SECONDS.toNanos(1) / refreshesPerSecond;
+    }
+    
+    int getMaxRefreshRate() {
+        return (int) (TimeUnit.SECONDS.toNanos(1) / minIntervalNanos);
+    }
+    
+    void request() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        
+        ScheduledExecutorService target = executor != null ? executor : sharedExecutor();
+        long delay = lastRunNanos + minIntervalNanos - System.nanoTime();
+        try {
+            if (delay > 0) {
+                target.schedule(this, delay, TimeUnit.NANOSECONDS);
+            } else {
+                target.execute(this);
+            }
+        } catch (RejectedExecutionException e) {
+            scheduled.set(false);
+            logger.warning("UI update rejected by executor: " + e.getMessage());
+        }
+    }
+    
+    @Override
+    public void run() {
+        scheduled.set(false);
+        lastRunNanos = System.nanoTime();
+        try {
+            dispatch.run();
+        } catch (RuntimeException e) {
+            logger.warning("UI update failed: " + e);
+        }
+    }
+}
@@ -3,6 +3,13 @@ package com.tn3270.ui;
 public interface ScreenUI {
     void updateScreen(char[] buffer, int rows, int cols);
     
+    default boolean supportsDeltaUpdates() {
+        return false;
+    }
+    
+    default void updateRows(int startRow, int endRow, char[] contents, int cols) {
+    }
+    
     void setCursorPosition(int row, int col);
     
     void setKeyboardLocked(boolean locked);
@@ -0,0 +1,134 @@
+package com.tn3270;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DataStreamBuilderTest {
+    private Screen screen;
+    private DataStreamBuilder builder;
+    
+    @Before
+    public void formatScreen() {
+        screen = new Screen(null, 2, 10);
+        screen.processIncomingData(bytes(
+                0xF5, 0xC2,
+                0x11, 0x40, 0xC3, 0x1D, 0x60, 0xC8, 0xC9,
+                0x11, 0x40, 0xC8, 0x29, 0x02, 0xC0, 0x40, 0x42, 0xF2,
+                0x11, 0x40, 0x50, 0x1D, 0x40));
+        screen.putString(9, "XY");
+        screen.putString(18, "ABCD");
+        screen.setCursorPosition(5);
+        builder = new DataStreamBuilder(screen);
+    }
+    
+    @Test
+    public void wrappedFieldIsModelledAsOneField() {
+        Field field = screen.getFields().get(2);
+        assertEquals(17, field.getStart());
+        assertEquals(6, field.getLength());
+        assertEquals(2, field.getEnd());
+    }
+    
+    @Test
+    public void readBufferSendsEveryCellWithFieldAttributes() {
+        assertEquals(hex(
+                0x7D, 0x40, 0xC5,
+                0xC3, 0xC4, 0x40,
+                0x1D, 0x60, 0xC8, 0xC9, 0x40, 0x40,
+                0x29, 0x03, 0xC0, 0xC1, 0x41, 0x00, 0x42, 0xF2,
+                0xE7, 0xE8, 0x40, 0x40, 0x40, 0x40, 0x40,
+                0x1D, 0xC1, 0x40, 0xC1, 0xC2),
+                build(b -> b.buildReadBuffer(AIDKey.ENTER)));
+    }
+    
+    @Test
+    public void readModifiedSendsModifiedFieldsIncludingWrappedField() {
+        assertEquals(hex(
+                0x7D, 0x40, 0xC5,
+                0x11, 0x40, 0xC9, 0xE7, 0xE8,
+                0x11, 0x40, 0xD1, 0x40, 0xC1, 0xC2, 0xC3, 0xC4),
+                build(b -> b.buildReadModified(AIDKey.ENTER, false)));
+    }
+    
+    @Test
+    public void readModifiedSendsOnlyTheAidForShortReadKeys() {
+        assertEquals(hex(0x6C), build(b -> b.buildReadModified(AIDKey.PA1, false)));
+    }
+    
+    @Test
+    public void readModifiedAllSendsFieldsForShortReadKeys() {
+        assertEquals(hex(
+                0x6C, 0x40, 0xC5,
+                0x11, 0x40, 0xC9, 0xE7, 0xE8,
+                0x11, 0x40, 0xD1, 0x40, 0xC1, 0xC2, 0xC3, 0xC4),
+                build(b -> b.buildReadModified(AIDKey.PA1, true)));
+    }
+    
+    @Test
+    public void readModifiedOmitsFieldsWhoseMdtWasReset() {
+        screen.processIncomingData(bytes(0xF1, 0xC3));
+        
+        assertEquals(hex(0x7D, 0x40, 0xC5), build(b -> b.buildReadModified(AIDKey.ENTER, false)));
+    }
+    
+    @Test
+    public void twelveBitAddressesUseTheStandardCodeTable() {
+        screen = new Screen(null, 24, 80);
+        builder = new DataStreamBuilder(screen);
+        
+        assertEquals(hex(0x7D, 0x40, 0x40), readModifiedAtCursor(0));
+        assertEquals(hex(0x7D, 0x40, 0x4F), readModifiedAtCursor(15));
+        assertEquals(hex(0x7D, 0xC1, 0x50), readModifiedAtCursor(80));
+        assertEquals(hex(0x7D, 0xC2, 0x60), readModifiedAtCursor(160));
+        assertEquals(hex(0x7D, 0x5D, 0x7F), readModifiedAtCursor(1919));
+    }
+    
+    @Test
+    public void fourteenBitAddressesAreSentInBinary() {
+        screen = new Screen(null, 62, 80);
+        builder = new DataStreamBuilder(screen);
+        
+        assertEquals(hex(0x7D, 0x7F, 0x7F), readModifiedAtCursor(4095));
+        assertEquals(hex(0x7D, 0x10, 0x04), readModifiedAtCursor(4100));
+    }
+    
+    private String readModifiedAtCursor(int position) {
+        screen.setCursorPosition(position);
+        return build(b -> b.buildReadModified(AIDKey.ENTER, false));
+    }
+    
+    private String build(Function<DataStreamBuilder, ByteBuffer> read) {
+        screen.getLock().lock();
+        try {
+            ByteBuffer record = read.apply(builder);
+            StringBuilder text = new StringBuilder();
+            while (record.hasRemaining()) {
+                text.append(String.format("%02X", record.get()));
+            }
+            return text.toString();
+        } finally {
+            screen.getLock().unlock();
+        }
+    }
+    
+    private static String hex(int... values) {
+        StringBuilder text = new StringBuilder();
+        for (int value : values) {
+            text.append(String.format("%02X", value));
+        }
+        return text.toString();
+    }
+    
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,101 @@
+package com.tn3270;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures inbound record throughput of {@link Screen#processIncomingData}.
+ * 
+ * Run with:
+ * java -cp target/classes:target/test-classes com.tn3270.DataStreamProcessorBenchmark
+ */
+public class DataStreamProcessorBenchmark {
+    
+    private static final int WARMUP_SECONDS = 3;
+    private static final int MEASURE_SECONDS = 5;
+    
+    public static void main(String[] args) {
+        Screen screen = new Screen(null);
+        
+        run("Erase/Write full screen", screen, buildFullScreen());
+        run("Write listing rows", screen, buildListingUpdate());
+    }
+    
+    private static void run(String name, Screen screen, byte[] record) {
+        measure(screen, record, TimeUnit.SECONDS.toNanos(WARMUP_SECONDS));
+        long records = measure(screen, record, TimeUnit.SECONDS.toNanos(MEASURE_SECONDS));
+        
+        System.out.println(String.format("%-26s %6d bytes/record %,12d records/sec",
+                name, record.length, records / MEASURE_SECONDS));
+    }
+    
+    private static long measure(Screen screen, byte[] record, long durationNanos) {
+        long count = 0;
+        long end = System.nanoTime() + durationNanos;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 100; i++) {
+                screen.processIncomingData(record);
+            }
+            count += 100;
+        }
+        return count;
+    }
+    
+    private static byte[] buildFullScreen() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xF5);
+        out.write(0xC2);
+        
+        for (int row = 0; row < 24; row++) {
+            writeSba(out, row * 80);
+            out.write(0x1D);
+            out.write(row % 2 == 0 ? 0x60 : 0x40);
+            writeText(out, String.format("%-20s", "LABEL " + row));
+            out.write(0x1D);
+            out.write(0x40);
+            writeText(out, String.format("%-57s", "VALUE FOR ROW " + row + " OF THE BENCHMARK SCREEN"));
+        }
+        
+        writeSba(out, 80 + 21);
+        out.write(0x13);
+        return out.toByteArray();
+    }
+    
+    private static byte[] buildListingUpdate() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xF1);
+        out.write(0xC0);
+        
+        for (int row = 2; row < 22; row++) {
+            writeSba(out, row * 80 + 1);
+            writeText(out, String.format("%-78s", "DATASET.NAME.ROW" + row + "   VOL001   3390   FB   80   27920"));
+        }
+        return out.toByteArray();
+    }
+    
+    private static void writeSba(ByteArrayOutputStream out, int address) {
+        out.write(0x11);
+        out.write(sixBit((address >> 6) & 0x3F));
+        out.write(sixBit(address & 0x3F));
+    }
+    
+    private static int sixBit(int value) {
+        return 0x40 | value;
+    }
+    
+    private static void writeText(ByteArrayOutputStream out, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            out.write(ch == ' ' ? 0x40 : toEbcdic(ch));
+        }
+    }
+    
+    private static int toEbcdic(char ch) {
+        if (ch >= 'A' && ch <= 'I') return 0xC1 + (ch - 'A');
+        if (ch >= 'J' && ch <= 'R') return 0xD1 + (ch - 'J');
+        if (ch >= 'S' && ch <= 'Z') return 0xE2 + (ch - 'S');
+        if (ch >= '0' && ch <= '9') return 0xF0 + (ch - '0');
+        if (ch == '.') return 0x4B;
+        return 0x40;
+    }
+}
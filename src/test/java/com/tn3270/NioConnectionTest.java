@@ -0,0 +1,286 @@
+package com.tn3270;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLEngineResult.Status;
+import javax.net.ssl.SSLSession;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NioConnectionTest {
+    private static final Logger logger = Logger.getLogger(NioConnectionTest.class.getName());
+    
+    private EventLoopGroup group;
+    private ServerSocket server;
+    private Socket peer;
+    private StubEngine engine;
+    private NioConnection connection;
+    
+    @Before
+    public void connect() throws Exception {
+        group = new EventLoopGroup(1);
+        server = new ServerSocket(0);
+        engine = new StubEngine();
+        connection = new NioConnection(group.next(), engine, new NioConnection.Listener() {
+            @Override
+            public void dataReceived(ByteBuffer data) {
+                data.position(data.limit());
+            }
+            
+            @Override
+            public void connectionClosed(IOException cause) {
+            }
+        });
+        
+        CompletableFuture<Void> ready = connection.connect(new InetSocketAddress("localhost", server.getLocalPort()));
+        peer = server.accept();
+        peer.setSoTimeout(3000);
+        engine.handshake = HandshakeStatus.NOT_HANDSHAKING;
+        poke();
+        ready.get(5, TimeUnit.SECONDS);
+        connection.startReading();
+    }
+    
+    @After
+    public void close() throws IOException {
+        connection.close();
+        peer.close();
+        server.close();
+        group.close();
+    }
+    
+    @Test(timeout = 10000)
+    public void writesDuringRenegotiationAreQueuedAndSentInOrder() throws Exception {
+        engine.handshake = HandshakeStatus.NEED_UNWRAP;
+        write("HELLO ");
+        write("WORLD");
+        
+        engine.handshake = HandshakeStatus.NOT_HANDSHAKING;
+        write("!");
+        poke();
+        
+        assertEquals("HELLO WORLD!", readFromPeer(12));
+    }
+    
+    @Test(timeout = 10000)
+    public void writesAfterPacketSizeGrowsUseLargerBuffers() throws Exception {
+        write("AB");
+        engine.packetSize = 8192;
+        write("CD");
+        
+        assertEquals("ABCD", readFromPeer(4));
+    }
+    
+    @Test(timeout = 10000)
+    public void overflowOfFullSizePacketFailsTheWrite() throws Exception {
+        engine.overflow = true;
+        try {
+            write("AB");
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertEquals("TLS record does not fit the packet buffer", e.getMessage());
+        }
+    }
+    
+    private void write(String text) throws IOException {
+        connection.write(new ByteBuffer[]{ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII))}, 1);
+    }
+    
+    private void poke() throws IOException {
+        peer.getOutputStream().write('x');
+        peer.getOutputStream().flush();
+    }
+    
+    private String readFromPeer(int length) throws IOException {
+        InputStream in = peer.getInputStream();
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        byte[] chunk = new byte[64];
+        try {
+            while (received.size() < length) {
+                int count = in.read(chunk);
+                if (count < 0) {
+                    break;
+                }
+                received.write(chunk, 0, count);
+            }
+        } catch (SocketTimeoutException e) {
+            logger.fine("Peer read timed out after " + received.size() + " bytes");
+        }
+        return new String(received.toByteArray(), StandardCharsets.US_ASCII);
+    }
+    
+    private static class StubEngine extends SSLEngine {
+        volatile HandshakeStatus handshake = HandshakeStatus.NEED_UNWRAP;
+        volatile int packetSize = 4096;
+        volatile boolean overflow;
+        
+        private final SSLSession session = (SSLSession) Proxy.newProxyInstance(SSLSession.class.getClassLoader(),
+                new Class<?>[]{SSLSession.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getPacketBufferSize")) {
+                        return packetSize;
+                    }
+                    if (method.getName().equals("getApplicationBufferSize")) {
+                        return 4096;
+                    }
+                    return null;
+                });
+        
+        @Override
+        public SSLEngineResult wrap(ByteBuffer[] sources, int offset, int length, ByteBuffer destination) {
+            HandshakeStatus status = handshake;
+            if (status != HandshakeStatus.NOT_HANDSHAKING) {
+                return new SSLEngineResult(Status.OK, status, 0, 0);
+            }
+            if (overflow || destination.remaining() < packetSize) {
+                return new SSLEngineResult(Status.BUFFER_OVERFLOW, status, 0, 0);
+            }
+            int count = 0;
+            for (int i = offset; i < offset + length; i++) {
+                while (sources[i].hasRemaining() && destination.hasRemaining()) {
+                    destination.put(sources[i].get());
+                    count++;
+                }
+            }
+            return new SSLEngineResult(Status.OK, status, count, count);
+        }
+        
+        @Override
+        public SSLEngineResult unwrap(ByteBuffer source, ByteBuffer[] destinations, int offset, int length) {
+            if (!source.hasRemaining()) {
+                return new SSLEngineResult(Status.BUFFER_UNDERFLOW, handshake, 0, 0);
+            }
+            int count = 0;
+            while (source.hasRemaining() && destinations[offset].hasRemaining()) {
+                destinations[offset].put(source.get());
+                count++;
+            }
+            return new SSLEngineResult(Status.OK, handshake, count, count);
+        }
+        
+        @Override
+        public HandshakeStatus getHandshakeStatus() {
+            return handshake;
+        }
+        
+        @Override
+        public SSLSession getSession() {
+            return session;
+        }
+        
+        @Override
+        public SSLSession getHandshakeSession() {
+            return null;
+        }
+        
+        @Override
+        public Runnable getDelegatedTask() {
+            return null;
+        }
+        
+        @Override
+        public void beginHandshake() {
+        }
+        
+        @Override
+        public void closeInbound() {
+        }
+        
+        @Override
+        public boolean isInboundDone() {
+            return false;
+        }
+        
+        @Override
+        public void closeOutbound() {
+        }
+        
+        @Override
+        public boolean isOutboundDone() {
+            return false;
+        }
+        
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return new String[0];
+        }
+        
+        @Override
+        public String[] getEnabledCipherSuites() {
+            return new String[0];
+        }
+        
+        @Override
+        public void setEnabledCipherSuites(String[] suites) {
+        }
+        
+        @Override
+        public String[] getSupportedProtocols() {
+            return new String[0];
+        }
+        
+        @Override
+        public String[] getEnabledProtocols() {
+            return new String[0];
+        }
+        
+        @Override
+        public void setEnabledProtocols(String[] protocols) {
+        }
+        
+        @Override
+        public void setUseClientMode(boolean mode) {
+        }
+        
+        @Override
+        public boolean getUseClientMode() {
+            return true;
+        }
+        
+        @Override
+        public void setNeedClientAuth(boolean need) {
+        }
+        
+        @Override
+        public boolean getNeedClientAuth() {
+            return false;
+        }
+        
+        @Override
+        public void setWantClientAuth(boolean want) {
+        }
+        
+        @Override
+        public boolean getWantClientAuth() {
+            return false;
+        }
+        
+        @Override
+        public void setEnableSessionCreation(boolean flag) {
+        }
+        
+        @Override
+        public boolean getEnableSessionCreation() {
+            return true;
+        }
+    }
+}
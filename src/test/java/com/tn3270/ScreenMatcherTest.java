@@ -0,0 +1,158 @@
+package com.tn3270;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ScreenMatcherTest {
+    
+    private static final int ROWS = 4;
+    private static final int COLS = 10;
+    private static final String ALPHABET = "ABC ";
+    
+    @Test
+    public void literalSpanningRowsMatchesOnlyUnrestrictedPatterns() {
+        Screen screen = newScreen();
+        screen.putString(8, "ABCD");
+        
+        ScreenPattern anywhere = ScreenPattern.text("ABCD");
+        ScreenPattern inRow = ScreenPattern.textInRow("ABCD", 0);
+        ScreenPattern regex = ScreenPattern.regex("ABCD");
+        ScreenMatcher matcher = ScreenMatcher.compile(anywhere, inRow, regex);
+        
+        assertEquals(Arrays.asList(anywhere), matcher.matchAll(screen.getSnapshot()));
+    }
+    
+    @Test
+    public void literalSpanningRowsIsFoundWhenOnlyTheLaterRowChanges() {
+        Screen screen = newScreen();
+        ScreenPattern pattern = ScreenPattern.text("ABCD");
+        ScreenMatcher matcher = ScreenMatcher.compile(pattern);
+        
+        screen.putString(8, "AB");
+        assertNull(matcher.match(screen.getSnapshot()));
+        
+        long version = screen.getVersion();
+        screen.putString(10, "CD");
+        assertEquals(version + 1, screen.getVersion());
+        assertSame(pattern, matcher.match(screen.getSnapshot()));
+        
+        screen.putString(10, "XX");
+        assertNull(matcher.match(screen.getSnapshot()));
+    }
+    
+    @Test
+    public void literalSpanningThreeRowsIsFound() {
+        Screen screen = newScreen();
+        ScreenPattern pattern = ScreenPattern.text("ABCCCCCCCCCCBA");
+        ScreenMatcher matcher = ScreenMatcher.compile(pattern);
+        
+        screen.putString(8, "ABCCCCCCCCCCBA");
+        assertSame(pattern, matcher.match(screen.getSnapshot()));
+        
+        screen.putString(21, "X");
+        assertNull(matcher.match(screen.getSnapshot()));
+    }
+    
+    @Test
+    public void incrementalMatchesAgreeWithBruteForce() {
+        assertAgreesWithBruteForce(1, 1);
+    }
+    
+    @Test
+    public void fullRescanMatchesAgreeWithBruteForce() {
+        assertAgreesWithBruteForce(2, 3);
+    }
+    
+    private static void assertAgreesWithBruteForce(long seed, int matchEvery) {
+        Random random = new Random(seed);
+        int checks = 0;
+        for (int trial = 0; trial < 200; trial++) {
+            Screen screen = newScreen();
+            List<ScreenPattern> patterns = randomPatterns(random);
+            ScreenMatcher matcher = ScreenMatcher.compile(patterns);
+            for (int step = 1; step <= 30; step++) {
+                StringBuilder text = new StringBuilder();
+                for (int i = 1 + random.nextInt(6); i > 0; i--) {
+                    text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                }
+                screen.putString(1 + random.nextInt(ROWS * COLS - 2), text.toString());
+                if (step % matchEvery != 0) {
+                    continue;
+                }
+                ScreenSnapshot snapshot = screen.getSnapshot();
+                assertEquals("trial " + trial + " step " + step + " " + Arrays.toString(snapshot.getLines()),
+                        bruteForce(patterns, snapshot), matcher.matchAll(snapshot));
+                checks++;
+            }
+        }
+        assertTrue(checks > 0);
+    }
+    
+    private static Screen newScreen() {
+        Screen screen = new Screen(null, ROWS, COLS);
+        screen.processIncomingData(new byte[]{(byte) 0xF5, (byte) 0xC2, 0x1D, 0x40});
+        return screen;
+    }
+    
+    private static List<ScreenPattern> randomPatterns(Random random) {
+        List<ScreenPattern> patterns = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = 1 + random.nextInt(i == 0 ? 14 : 4); j > 0; j--) {
+                text.append(ALPHABET.charAt(random.nextInt(3)));
+            }
+            switch (random.nextInt(4)) {
+                case 0:
+                    patterns.add(ScreenPattern.text(text.toString()));
+                    break;
+                case 1:
+                    patterns.add(ScreenPattern.textInRow(text.toString(), random.nextInt(ROWS)));
+                    break;
+                case 2:
+                    patterns.add(ScreenPattern.textInRegion(text.toString(), random.nextInt(ROWS - 1),
+                            random.nextInt(COLS / 2), 2, 5));
+                    break;
+                default:
+                    patterns.add(ScreenPattern.regexInRow(text.toString().replace("C", "[BC]+"),
+                            random.nextInt(ROWS)));
+                    break;
+            }
+        }
+        return patterns;
+    }
+    
+    private static List<ScreenPattern> bruteForce(List<ScreenPattern> patterns, ScreenSnapshot snapshot) {
+        List<ScreenPattern> matched = new ArrayList<>();
+        for (ScreenPattern pattern : patterns) {
+            if (pattern.isAnywhere() ? snapshot.getText().contains(pattern.getText())
+                    : matchesInRegion(pattern, snapshot)) {
+                matched.add(pattern);
+            }
+        }
+        return matched;
+    }
+    
+    private static boolean matchesInRegion(ScreenPattern pattern, ScreenSnapshot snapshot) {
+        int lastRow = Math.min(pattern.getLastRow(), snapshot.getRows() - 1);
+        int lastCol = Math.min(pattern.getLastCol(), snapshot.getCols() - 1);
+        for (int row = pattern.getFirstRow(); row <= lastRow; row++) {
+            if (pattern.getFirstCol() > lastCol) {
+                continue;
+            }
+            String region = snapshot.getLine(row).substring(pattern.getFirstCol(), lastCol + 1);
+            if (pattern.isRegex() ? pattern.getRegex().matcher(region).find() : region.contains(pattern.getText())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,120 @@
+package com.tn3270;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TelnetStreamTest {
+    private static final int IAC = 0xFF;
+    private static final int EOR = 0xEF;
+    private static final int WILL = 0xFB;
+    private static final int TELOPT_EOR = 0x19;
+    
+    private TelnetStream stream;
+    private List<byte[]> records;
+    
+    @Before
+    public void createStream() {
+        stream = new TelnetStream(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(),
+                TerminalType.IBM_3278_2);
+        records = new ArrayList<>();
+    }
+    
+    @Test
+    public void recordSplitAcrossChunksIsDeliveredOnce() throws IOException {
+        negotiateEor();
+        feed(0xF5, 0xC2, 0xC1);
+        feed(0xC2, IAC);
+        assertEquals(0, records.size());
+        
+        feed(EOR, 0xF1, IAC, EOR);
+        assertEquals(2, records.size());
+        assertArrayEquals(bytes(0xF5, 0xC2, 0xC1, 0xC2), records.get(0));
+        assertArrayEquals(bytes(0xF1), records.get(1));
+    }
+    
+    @Test
+    public void escapedIacSplitAcrossChunksIsUnescaped() throws IOException {
+        negotiateEor();
+        feed(0xF5, IAC);
+        feed(IAC, 0xC1, IAC);
+        feed(IAC);
+        feed(IAC, EOR);
+        
+        assertEquals(1, records.size());
+        assertArrayEquals(bytes(0xF5, IAC, 0xC1, IAC), records.get(0));
+    }
+    
+    @Test
+    public void oversizedRecordIsDiscarded() throws IOException {
+        negotiateEor();
+        stream.setMaxRecordSize(4);
+        feed(0xF5, 0xC2, 0xC1);
+        feed(0xC2, 0xC3, 0xC4, IAC, EOR);
+        assertEquals(0, records.size());
+        
+        feed(0xF1, 0xC2, IAC, EOR);
+        assertEquals(1, records.size());
+        assertArrayEquals(bytes(0xF1, 0xC2), records.get(0));
+    }
+    
+    @Test
+    public void recordWithoutEorIsFlushedOnRequest() throws IOException {
+        feed(0xF5, 0xC2, 0xC1);
+        assertEquals(0, records.size());
+        assertTrue(stream.hasPendingRecord());
+        
+        stream.flushPendingRecord(records::add);
+        assertFalse(stream.hasPendingRecord());
+        assertEquals(1, records.size());
+        assertArrayEquals(bytes(0xF5, 0xC2, 0xC1), records.get(0));
+    }
+    
+    @Test
+    public void recordWithoutEorIsFlushedAfterEachChunkWithoutDelay() throws IOException {
+        stream.setRecordFlushDelay(0);
+        feed(0xF5, 0xC2);
+        feed(0xC1);
+        
+        assertEquals(2, records.size());
+        assertArrayEquals(bytes(0xF5, 0xC2), records.get(0));
+        assertArrayEquals(bytes(0xC1), records.get(1));
+    }
+    
+    @Test
+    public void pendingRecordIsNotFlushedInsideTelnetCommand() throws IOException {
+        feed(0xF5, 0xC2, IAC);
+        assertFalse(stream.hasPendingRecord());
+        
+        feed(IAC);
+        assertTrue(stream.hasPendingRecord());
+        stream.flushPendingRecord(records::add);
+        assertArrayEquals(bytes(0xF5, 0xC2, IAC), records.get(0));
+    }
+    
+    private void negotiateEor() throws IOException {
+        feed(IAC, WILL, TELOPT_EOR);
+    }
+    
+    private void feed(int... data) throws IOException {
+        stream.feed(bytes(data), 0, data.length, records::add);
+    }
+    
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
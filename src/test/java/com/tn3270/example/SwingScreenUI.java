@@ -71,6 +71,28 @@ public class SwingScreenUI extends JFrame implements ScreenUI {
         });
     }
     
+    @Override
+    public boolean supportsDeltaUpdates() {
+        return true;
+    }
+    
+    @Override
+    public void updateRows(int startRow, int endRow, char[] contents, int cols) {
+        SwingUtilities.invokeLater(() -> {
+            StringBuilder sb = new StringBuilder();
+            for (int row = 0; row < endRow - startRow; row++) {
+                sb.append(contents, row * cols, cols);
+                sb.append('\n');
+            }
+            int start = startRow * (cols + 1);
+            int end = Math.min(endRow * (cols + 1), textArea.getDocument().getLength());
+            if (end == textArea.getDocument().getLength()) {
+                sb.setLength(sb.length() - 1);
+            }
+            textArea.replaceRange(sb.toString(), start, end);
+        });
+    }
+    
     @Override
     public void setCursorPosition(int row, int col) {
         this.cursorRow = row;